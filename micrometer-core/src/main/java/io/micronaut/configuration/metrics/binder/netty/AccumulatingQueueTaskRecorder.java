@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micronaut.core.annotation.Internal;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EXECUTION_TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MAX;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NUMBER;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.QUEUE;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WAIT_TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Low overhead recorder: tasks only carry their enqueue timestamp and are accumulated
+ * into the {@link QueueTaskStatistics} of their event loop, which are published as
+ * {@link FunctionTimer}s and step max gauges.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class AccumulatingQueueTaskRecorder implements QueueTaskRecorder {
+
+    private final QueueTaskStatistics statistics;
+    private final QueueTaskSampler sampler;
+
+    /**
+     * @param index         An index.
+     * @param meterRegistry The meter registry.
+     * @param tag           A Tag.
+     * @param statistics    The statistics of the queue.
+     * @param sampler       Selects the tasks to time.
+     */
+    AccumulatingQueueTaskRecorder(int index,
+                                  MeterRegistry meterRegistry,
+                                  Tag tag,
+                                  QueueTaskStatistics statistics,
+                                  QueueTaskSampler sampler) {
+        this.statistics = statistics;
+        this.sampler = sampler;
+
+        Tags tags = Tags.of(tag, Tag.of(QUEUE, WAIT_TIME))
+                .and(NUMBER, Integer.toString(index));
+        FunctionTimer.builder(dot(NETTY, QUEUE, WAIT_TIME), statistics, QueueTaskStatistics::count, s -> s.waitTime(NANOSECONDS), NANOSECONDS)
+                .description("Wait time spent in the Queue.")
+                .tags(tags)
+                .register(meterRegistry);
+        TimeGauge.builder(dot(NETTY, QUEUE, WAIT_TIME, MAX), statistics, NANOSECONDS, s -> s.waitTimeMax(NANOSECONDS))
+                .description("Maximum wait time spent in the Queue.")
+                .tags(tags)
+                .register(meterRegistry);
+
+        tags = Tags.of(tag, Tag.of(QUEUE, EXECUTION_TIME))
+                .and(NUMBER, Integer.toString(index));
+        FunctionTimer.builder(dot(NETTY, QUEUE, EXECUTION_TIME), statistics, QueueTaskStatistics::count, s -> s.executionTime(NANOSECONDS), NANOSECONDS)
+                .description("Runnable execution time.")
+                .tags(tags)
+                .register(meterRegistry);
+        TimeGauge.builder(dot(NETTY, QUEUE, EXECUTION_TIME, MAX), statistics, NANOSECONDS, s -> s.executionTimeMax(NANOSECONDS))
+                .description("Maximum runnable execution time.")
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Runnable wrap(Runnable task) {
+        statistics.submitted();
+        if (!sampler.sample()) {
+            return task;
+        }
+        return new StampedRunnable(statistics, task, statistics.clock().monotonicTime());
+    }
+
+    @Override
+    public double waitTimeMax(TimeUnit unit) {
+        return statistics.waitTimeMax(unit);
+    }
+
+    /**
+     * Runnable wrapper that only carries the time it was enqueued.
+     */
+    static final class StampedRunnable implements Runnable {
+        private final QueueTaskStatistics statistics;
+        private final Runnable delegate;
+        private final long enqueuedAt;
+
+        StampedRunnable(QueueTaskStatistics statistics, Runnable delegate, long enqueuedAt) {
+            this.statistics = statistics;
+            this.delegate = delegate;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            final long start = statistics.clock().monotonicTime();
+            try {
+                delegate.run();
+            } finally {
+                statistics.record(start - enqueuedAt, statistics.clock().monotonicTime() - start);
+            }
+        }
+    }
+}
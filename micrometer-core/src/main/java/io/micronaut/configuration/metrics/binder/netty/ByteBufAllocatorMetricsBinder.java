@@ -15,6 +15,7 @@
  */
 package io.micronaut.configuration.metrics.binder.netty;
 
+import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
@@ -24,8 +25,10 @@ import io.micronaut.context.annotation.Context;
 import io.micronaut.context.annotation.Requires;
 import io.micronaut.context.annotation.Value;
 import io.micronaut.core.annotation.Internal;
+import io.micronaut.core.annotation.Nullable;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
 import io.netty.buffer.PoolArenaMetric;
 import io.netty.buffer.PoolChunkListMetric;
 import io.netty.buffer.PoolChunkMetric;
@@ -35,9 +38,14 @@ import io.netty.buffer.PooledByteBufAllocatorMetric;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import jakarta.annotation.PostConstruct;
 
+import java.time.Duration;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
 import static io.micronaut.configuration.metrics.binder.netty.ByteBufAllocatorMetricsBinder.ByteBufAllocatorMetricKind.POOLED_ALLOCATOR;
 import static io.micronaut.configuration.metrics.binder.netty.ByteBufAllocatorMetricsBinder.ByteBufAllocatorMetricKind.POOLED_ARENAS;
@@ -48,6 +56,7 @@ import static io.micronaut.configuration.metrics.binder.netty.ByteBufAllocatorMe
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ACTIVE;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ALLOC;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ALLOCATION;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ALLOCATOR;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ARENA;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.AVAILABLE;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.BYTE;
@@ -64,6 +73,7 @@ import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LOCAL
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MAX;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MEMORY;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MIN;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MISS;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NORMAL;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NUMBER;
@@ -81,7 +91,10 @@ import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory
 import static io.micronaut.core.util.StringUtils.FALSE;
 
 /**
- * Metrics for Netty default ByteBufAllocators.
+ * Metrics for Netty ByteBufAllocators.
+ * <p>
+ * The default allocators are metered on startup, the other allocators when they are first
+ * seen by the server or client channels. The meters are tagged with the allocator instance.
  *
  * @author Christophe Roudet
  * @since 2.0
@@ -93,8 +106,27 @@ import static io.micronaut.core.util.StringUtils.FALSE;
 @Internal
 final class ByteBufAllocatorMetricsBinder {
 
+    /**
+     * The value of the allocator tag of Netty's default allocators.
+     */
+    static final String DEFAULT_ALLOCATOR = "default";
+
+    /**
+     * The name of the allocators used by the server channels, followed by the port of their listener.
+     */
+    static final String SERVER_ALLOCATOR = "server";
+
+    /**
+     * The name of the allocators used by the client channels.
+     */
+    static final String CLIENT_ALLOCATOR = "client";
+
     private final BeanProvider<MeterRegistry> meterRegistryProvider;
     private final Set<ByteBufAllocatorMetricKind> kinds;
+    @Nullable
+    private final GaugeSnapshot snapshot;
+    private final Set<ByteBufAllocator> allocators = ConcurrentHashMap.newKeySet();
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
 
     enum ByteBufAllocatorMetricKind {
         POOLED_ALLOCATOR,
@@ -110,11 +142,16 @@ final class ByteBufAllocatorMetricsBinder {
      *
      * @param meterRegistryProvider The metric registry provider.
      * @param kinds The kinds of metrics to add.
+     * @param snapshotInterval The interval the arena metrics are collected at once, zero to read them on every publication.
      */
     public ByteBufAllocatorMetricsBinder(BeanProvider<MeterRegistry> meterRegistryProvider,
-                                         @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.metrics:null}") Set<ByteBufAllocatorMetricKind> kinds) {
+                                         @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.metrics:null}") Set<ByteBufAllocatorMetricKind> kinds,
+                                         @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.snapshot-interval:0s}") Duration snapshotInterval) {
         this.meterRegistryProvider = meterRegistryProvider;
         this.kinds = kinds == null || kinds.isEmpty() ? EnumSet.allOf(ByteBufAllocatorMetricKind.class) : kinds;
+        this.snapshot = snapshotInterval.isZero() || snapshotInterval.isNegative()
+                ? null
+                : new GaugeSnapshot(meterRegistryProvider.get().config().clock(), snapshotInterval);
     }
 
     /**
@@ -122,61 +159,42 @@ final class ByteBufAllocatorMetricsBinder {
      */
     @PostConstruct
     public void configureNettyMetrics() {
-        MeterRegistry meterRegistry = meterRegistryProvider.get();
-        if (kinds.contains(POOLED_ALLOCATOR)) {
-            PooledByteBufAllocatorMetric pooledMetric = PooledByteBufAllocator.DEFAULT.metric();
-
-            Tags pooled = Tags.of(ALLOC, POOLED);
-            Gauge.builder(dot(NETTY, ALLOC, MEMORY, USED), pooledMetric, ByteBufAllocatorMetric::usedHeapMemory)
-                    .description("The number of the bytes of the heap memory.").tags(pooled.and(MEMORY, HEAP)).register(meterRegistry);
-            Gauge.builder(dot(NETTY, ALLOC, MEMORY, USED), pooledMetric, ByteBufAllocatorMetric::usedDirectMemory)
-                    .description("The number of the bytes of the directy memory.").tags(pooled.and(MEMORY, DIRECT)).register(meterRegistry);
-
-            Gauge.builder(dot(NETTY, ALLOC, ARENA, COUNT), pooledMetric, PooledByteBufAllocatorMetric::numHeapArenas)
-                    .description("The number of heap arenas.")
-                    .tags(pooled.and(MEMORY, HEAP))
-                    .register(meterRegistry);
-            Gauge.builder(dot(NETTY, ALLOC, ARENA, COUNT), pooledMetric, PooledByteBufAllocatorMetric::numDirectArenas)
-                    .description("The number of direct arenas.")
-                    .tags(pooled.and(MEMORY, DIRECT))
-                    .register(meterRegistry);
-            Gauge.builder(dot(NETTY, ALLOC, THREAD, LOCAL, CACHE, COUNT), pooledMetric, PooledByteBufAllocatorMetric::numDirectArenas)
-                    .description("The number of direct arenas.")
-                    .tags(pooled)
-                    .register(meterRegistry);
-            Gauge.builder(dot(NETTY, ALLOC, CACHE, SIZE), pooledMetric, PooledByteBufAllocatorMetric::smallCacheSize)
-                    .description("The size of the small cache.")
-                    .tags(pooled.and(CACHE, SMALL))
-                    .register(meterRegistry);
-            Gauge.builder(dot(NETTY, ALLOC, CACHE, SIZE), pooledMetric, PooledByteBufAllocatorMetric::normalCacheSize)
-                    .description("The size of the normat cache.")
-                    .tags(pooled.and(CACHE, NORMAL))
-                    .register(meterRegistry);
-            Gauge.builder(dot(NETTY, ALLOC, CHUNK, SIZE), pooledMetric, PooledByteBufAllocatorMetric::chunkSize)
-                    .description("The chunk size for an arena.")
-                    .tags(pooled)
-                    .register(meterRegistry);
-
-            if (kinds.contains(POOLED_ARENAS)) {
-                for (int i = 0; i < pooledMetric.directArenas().size(); i++) {
-                    Tags tags = Tags.of(MEMORY, DIRECT)
-                            .and(dot(ARENA, NUMBER), Integer.toString(i));
-
-                    meterPoolArena(tags, pooledMetric.directArenas().get(i));
-                }
-
-                for (int i = 0; i < pooledMetric.heapArenas().size(); i++) {
-                    Tags tags = Tags.of(MEMORY, HEAP)
-                            .and(dot(ARENA, NUMBER), Integer.toString(i));
-
-                    meterPoolArena(tags, pooledMetric.heapArenas().get(i));
-                }
-            }
-        }
+        bind(PooledByteBufAllocator.DEFAULT);
+        bind(UnpooledByteBufAllocator.DEFAULT);
+    }
 
-        if (kinds.contains(UNPOOLED_ALLOCATOR)) {
-            ByteBufAllocatorMetric unpooledMetric = UnpooledByteBufAllocator.DEFAULT.metric();
-            Tags unpooled = Tags.of(ALLOC, UNPOOLED);
+    /**
+     * Adds metrics for Netty's default ByteBufAllocators.
+     *
+     * @param allocator The allocator.
+     */
+    private void bind(ByteBufAllocator allocator) {
+        bind(allocator, DEFAULT_ALLOCATOR);
+    }
+
+    /**
+     * Adds metrics for an allocator used by the channels, unless it is already metered. The allocator
+     * is tagged with the given name, or with the name followed by a sequence number if another
+     * allocator already has it, so the tags stay the same across restarts.
+     *
+     * @param allocator The allocator.
+     * @param name      The name of the server or client using the allocator.
+     */
+    void bind(ByteBufAllocator allocator, String name) {
+        if (allocators.contains(allocator) || !allocators.add(allocator)) {
+            return;
+        }
+        String id = allocator == PooledByteBufAllocator.DEFAULT || allocator == UnpooledByteBufAllocator.DEFAULT
+                ? DEFAULT_ALLOCATOR
+                : uniqueName(name);
+        if (allocator instanceof PooledByteBufAllocator pooledAllocator) {
+            if (kinds.contains(POOLED_ALLOCATOR)) {
+                meterPooledAllocator(Tags.of(ALLOCATOR, id), pooledAllocator.metric());
+            }
+        } else if (allocator instanceof ByteBufAllocatorMetricProvider metricProvider && kinds.contains(UNPOOLED_ALLOCATOR)) {
+            MeterRegistry meterRegistry = meterRegistryProvider.get();
+            ByteBufAllocatorMetric unpooledMetric = metricProvider.metric();
+            Tags unpooled = Tags.of(ALLOC, UNPOOLED).and(ALLOCATOR, id);
 
             Gauge.builder(dot(NETTY, ALLOC, MEMORY, USED), unpooledMetric, ByteBufAllocatorMetric::usedHeapMemory)
                     .description("The number of the bytes of the heap memory.").tags(unpooled.and(MEMORY, HEAP)).register(meterRegistry);
@@ -185,77 +203,118 @@ final class ByteBufAllocatorMetricsBinder {
         }
     }
 
-    private void meterPoolArena(Tags tags, PoolArenaMetric pam) {
+    private String uniqueName(String name) {
+        String id = name;
+        for (int i = 2; !names.add(id); i++) {
+            id = name + '-' + i;
+        }
+        return id;
+    }
+
+    private void meterPooledAllocator(Tags allocatorTags, PooledByteBufAllocatorMetric pooledMetric) {
         MeterRegistry meterRegistry = meterRegistryProvider.get();
 
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, THREAD, CACHE, COUNT), pam, PoolArenaMetric::numThreadCaches)
-                .description("Returns the number of thread caches backed by this arena.")
-                .tags(tags)
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, SUBPAGE, COUNT), pam, PoolArenaMetric::numSmallSubpages)
-                .description("Returns the number of small sub-pages for the arena.")
-                .tags(tags.and(SUBPAGE, SMALL))
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, CHUNKLIST, COUNT), pam, PoolArenaMetric::numChunkLists)
-                .description("Returns the number of chunk lists for the arena.")
-                .tags(tags)
-                .register(meterRegistry);
+        Tags pooled = allocatorTags.and(ALLOC, POOLED);
+        Gauge.builder(dot(NETTY, ALLOC, MEMORY, USED), pooledMetric, ByteBufAllocatorMetric::usedHeapMemory)
+                .description("The number of the bytes of the heap memory.").tags(pooled.and(MEMORY, HEAP)).register(meterRegistry);
+        Gauge.builder(dot(NETTY, ALLOC, MEMORY, USED), pooledMetric, ByteBufAllocatorMetric::usedDirectMemory)
+                .description("The number of the bytes of the directy memory.").tags(pooled.and(MEMORY, DIRECT)).register(meterRegistry);
 
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT), pam, PoolArenaMetric::numAllocations)
-                .description("Return the number of allocations done via the arena. This includes all sizes.")
-                .tags(tags)
+        Gauge.builder(dot(NETTY, ALLOC, ARENA, COUNT), pooledMetric, PooledByteBufAllocatorMetric::numHeapArenas)
+                .description("The number of heap arenas.")
+                .tags(pooled.and(MEMORY, HEAP))
                 .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT), pam, PoolArenaMetric::numSmallAllocations)
-                .description("Return the number of small allocations done via the arena.")
-                .tags(tags.and(SIZE, SMALL))
+        Gauge.builder(dot(NETTY, ALLOC, ARENA, COUNT), pooledMetric, PooledByteBufAllocatorMetric::numDirectArenas)
+                .description("The number of direct arenas.")
+                .tags(pooled.and(MEMORY, DIRECT))
                 .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT), pam, PoolArenaMetric::numNormalAllocations)
-                .description("Return the number of normal allocations done via the arena.")
-                .tags(tags.and(SIZE, NORMAL))
+        Gauge.builder(dot(NETTY, ALLOC, THREAD, LOCAL, CACHE, COUNT), pooledMetric, PooledByteBufAllocatorMetric::numThreadLocalCaches)
+                .description("The number of thread local caches in use.")
+                .tags(pooled)
                 .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT), pam, PoolArenaMetric::numHugeAllocations)
-                .description("Return the number of huge allocations done via the arena.")
-                .tags(tags.and(SIZE, HUGE))
+        FunctionCounter.builder(dot(NETTY, ALLOC, CACHE, MISS), pooledMetric.directArenas(), arenas -> sum(arenas, PoolArenaMetric::numSmallAllocations))
+                .description("The number of small allocations the thread local caches could not serve, served by the arenas.")
+                .tags(pooled.and(MEMORY, DIRECT).and(SIZE, SMALL))
                 .register(meterRegistry);
-
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, DEALLOCATION, COUNT), pam, PoolArenaMetric::numDeallocations)
-                .description("Return the number of deallocations done via the arena. This includes all sizes.")
-                .tags(tags)
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, DEALLOCATION, COUNT), pam, PoolArenaMetric::numSmallDeallocations)
-                .description("Return the number of small deallocations done via the arena.")
-                .tags(tags.and(SIZE, SMALL))
+        FunctionCounter.builder(dot(NETTY, ALLOC, CACHE, MISS), pooledMetric.directArenas(), arenas -> sum(arenas, PoolArenaMetric::numNormalAllocations))
+                .description("The number of normal allocations the thread local caches could not serve, served by the arenas.")
+                .tags(pooled.and(MEMORY, DIRECT).and(SIZE, NORMAL))
                 .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, DEALLOCATION, COUNT), pam, PoolArenaMetric::numNormalDeallocations)
-                .description("Return the number of normal deallocations done via the arena.")
-                .tags(tags.and(SIZE, NORMAL))
+        FunctionCounter.builder(dot(NETTY, ALLOC, CACHE, MISS), pooledMetric.heapArenas(), arenas -> sum(arenas, PoolArenaMetric::numSmallAllocations))
+                .description("The number of small allocations the thread local caches could not serve, served by the arenas.")
+                .tags(pooled.and(MEMORY, HEAP).and(SIZE, SMALL))
                 .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, DEALLOCATION, COUNT), pam, PoolArenaMetric::numHugeDeallocations)
-                .description("Return the number of huge deallocations done via the arena.")
-                .tags(tags.and(SIZE, HUGE))
+        FunctionCounter.builder(dot(NETTY, ALLOC, CACHE, MISS), pooledMetric.heapArenas(), arenas -> sum(arenas, PoolArenaMetric::numNormalAllocations))
+                .description("The number of normal allocations the thread local caches could not serve, served by the arenas.")
+                .tags(pooled.and(MEMORY, HEAP).and(SIZE, NORMAL))
                 .register(meterRegistry);
-
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ALLOCATION, ACTIVE, COUNT), pam, PoolArenaMetric::numActiveAllocations)
-                .description("Return the number of currently active allocations.")
-                .tags(tags)
+        Gauge.builder(dot(NETTY, ALLOC, CACHE, SIZE), pooledMetric, PooledByteBufAllocatorMetric::smallCacheSize)
+                .description("The size of the small cache.")
+                .tags(pooled.and(CACHE, SMALL))
                 .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ALLOCATION, ACTIVE, COUNT), pam, PoolArenaMetric::numActiveSmallAllocations)
-                .description("Return the number of currently active small allocations.")
-                .tags(tags.and(SIZE, SMALL))
+        Gauge.builder(dot(NETTY, ALLOC, CACHE, SIZE), pooledMetric, PooledByteBufAllocatorMetric::normalCacheSize)
+                .description("The size of the normat cache.")
+                .tags(pooled.and(CACHE, NORMAL))
                 .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ALLOCATION, ACTIVE, COUNT), pam, PoolArenaMetric::numActiveNormalAllocations)
-                .description("Return the number of currently active normal allocations.")
-                .tags(tags.and(SIZE, NORMAL))
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ALLOCATION, ACTIVE, COUNT), pam, PoolArenaMetric::numActiveHugeAllocations)
-                .description("Return the number of currently active huge allocations.")
-                .tags(tags.and(SIZE, HUGE))
+        Gauge.builder(dot(NETTY, ALLOC, CHUNK, SIZE), pooledMetric, PooledByteBufAllocatorMetric::chunkSize)
+                .description("The chunk size for an arena.")
+                .tags(pooled)
                 .register(meterRegistry);
 
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, ACTIVE, BYTE, COUNT), pam, PoolArenaMetric::numActiveBytes)
-                .description("Return the number of active bytes that are currently allocated by the arena.")
-                .tags(tags)
-                .register(meterRegistry);
+        if (kinds.contains(POOLED_ARENAS)) {
+            for (int i = 0; i < pooledMetric.directArenas().size(); i++) {
+                Tags tags = allocatorTags.and(MEMORY, DIRECT)
+                        .and(dot(ARENA, NUMBER), Integer.toString(i));
+
+                meterPoolArena(tags, pooledMetric.directArenas().get(i));
+            }
+
+            for (int i = 0; i < pooledMetric.heapArenas().size(); i++) {
+                Tags tags = allocatorTags.and(MEMORY, HEAP)
+                        .and(dot(ARENA, NUMBER), Integer.toString(i));
+
+                meterPoolArena(tags, pooledMetric.heapArenas().get(i));
+            }
+        }
+    }
+
+    private void meterPoolArena(Tags tags, PoolArenaMetric pam) {
+        gauge(dot(NETTY, ALLOC, ARENA, THREAD, CACHE, COUNT), pam, PoolArenaMetric::numThreadCaches, "Returns the number of thread caches backed by this arena.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, SUBPAGE, COUNT), pam, PoolArenaMetric::numSmallSubpages, "Returns the number of small sub-pages for the arena.",
+                tags.and(SUBPAGE, SMALL));
+        gauge(dot(NETTY, ALLOC, ARENA, CHUNKLIST, COUNT), pam, PoolArenaMetric::numChunkLists, "Returns the number of chunk lists for the arena.",
+                tags);
+
+        gauge(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT), pam, PoolArenaMetric::numAllocations, "Return the number of allocations done via the arena. This includes all sizes.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT), pam, PoolArenaMetric::numSmallAllocations, "Return the number of small allocations done via the arena.",
+                tags.and(SIZE, SMALL));
+        gauge(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT), pam, PoolArenaMetric::numNormalAllocations, "Return the number of normal allocations done via the arena.",
+                tags.and(SIZE, NORMAL));
+        gauge(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT), pam, PoolArenaMetric::numHugeAllocations, "Return the number of huge allocations done via the arena.",
+                tags.and(SIZE, HUGE));
+
+        gauge(dot(NETTY, ALLOC, ARENA, DEALLOCATION, COUNT), pam, PoolArenaMetric::numDeallocations, "Return the number of deallocations done via the arena. This includes all sizes.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, DEALLOCATION, COUNT), pam, PoolArenaMetric::numSmallDeallocations, "Return the number of small deallocations done via the arena.",
+                tags.and(SIZE, SMALL));
+        gauge(dot(NETTY, ALLOC, ARENA, DEALLOCATION, COUNT), pam, PoolArenaMetric::numNormalDeallocations, "Return the number of normal deallocations done via the arena.",
+                tags.and(SIZE, NORMAL));
+        gauge(dot(NETTY, ALLOC, ARENA, DEALLOCATION, COUNT), pam, PoolArenaMetric::numHugeDeallocations, "Return the number of huge deallocations done via the arena.",
+                tags.and(SIZE, HUGE));
+
+        gauge(dot(NETTY, ALLOC, ARENA, ALLOCATION, ACTIVE, COUNT), pam, PoolArenaMetric::numActiveAllocations, "Return the number of currently active allocations.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, ALLOCATION, ACTIVE, COUNT), pam, PoolArenaMetric::numActiveSmallAllocations, "Return the number of currently active small allocations.",
+                tags.and(SIZE, SMALL));
+        gauge(dot(NETTY, ALLOC, ARENA, ALLOCATION, ACTIVE, COUNT), pam, PoolArenaMetric::numActiveNormalAllocations, "Return the number of currently active normal allocations.",
+                tags.and(SIZE, NORMAL));
+        gauge(dot(NETTY, ALLOC, ARENA, ALLOCATION, ACTIVE, COUNT), pam, PoolArenaMetric::numActiveHugeAllocations, "Return the number of currently active huge allocations.",
+                tags.and(SIZE, HUGE));
+
+        gauge(dot(NETTY, ALLOC, ARENA, ACTIVE, BYTE, COUNT), pam, PoolArenaMetric::numActiveBytes, "Return the number of active bytes that are currently allocated by the arena.",
+                tags);
 
         if (kinds.contains(POOLED_ARENAS_SUBPAGES)) {
             for (int i = 0; i < pam.smallSubpages().size(); i++) {
@@ -276,37 +335,21 @@ final class ByteBufAllocatorMetricsBinder {
     }
 
     private void meterSubpage(Tags tags, PoolSubpageMetric psm) {
-        MeterRegistry meterRegistry = meterRegistryProvider.get();
-
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, SUBPAGE, ELEMENT, MAX), psm, PoolSubpageMetric::maxNumElements)
-                .description("Return the number of maximal elements that can be allocated out of the sub-page.")
-                .tags(tags)
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, SUBPAGE, AVAILABLE, COUNT), psm, PoolSubpageMetric::numAvailable)
-                .description("Return the number of available elements to be allocated.")
-                .tags(tags)
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, SUBPAGE, ELEMENT, SIZE), psm, PoolSubpageMetric::elementSize)
-                .description("Return the size (in bytes) of the elements that will be allocated.")
-                .tags(tags)
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, SUBPAGE, PAGE, SIZE), psm, PoolSubpageMetric::pageSize)
-                .description("Return the size (in bytes) of this page.")
-                .tags(tags)
-                .register(meterRegistry);
+        gauge(dot(NETTY, ALLOC, ARENA, SUBPAGE, ELEMENT, MAX), psm, PoolSubpageMetric::maxNumElements, "Return the number of maximal elements that can be allocated out of the sub-page.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, SUBPAGE, AVAILABLE, COUNT), psm, PoolSubpageMetric::numAvailable, "Return the number of available elements to be allocated.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, SUBPAGE, ELEMENT, SIZE), psm, PoolSubpageMetric::elementSize, "Return the size (in bytes) of the elements that will be allocated.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, SUBPAGE, PAGE, SIZE), psm, PoolSubpageMetric::pageSize, "Return the size (in bytes) of this page.",
+                tags);
     }
 
     private void meterChunkList(Tags tags, PoolChunkListMetric pclm) {
-        MeterRegistry meterRegistry = meterRegistryProvider.get();
-
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, CHUNKLIST, USAGE, MIN), pclm, PoolChunkListMetric::minUsage)
-                .description("Return the minimum usage of the chunk list before which chunks are promoted to the previous list.")
-                .tags(tags)
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, CHUNKLIST, USAGE, MAX), pclm, PoolChunkListMetric::maxUsage)
-                .description("Return the maximum usage of the chunk list after which chunks are promoted to the next list.")
-                .tags(tags)
-                .register(meterRegistry);
+        gauge(dot(NETTY, ALLOC, ARENA, CHUNKLIST, USAGE, MIN), pclm, PoolChunkListMetric::minUsage, "Return the minimum usage of the chunk list before which chunks are promoted to the previous list.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, CHUNKLIST, USAGE, MAX), pclm, PoolChunkListMetric::maxUsage, "Return the maximum usage of the chunk list after which chunks are promoted to the next list.",
+                tags);
         if (kinds.contains(POOLED_ARENAS_CHUNKS)) {
             int index = 0;
             for (Iterator<PoolChunkMetric> i = pclm.iterator(); i.hasNext(); ++index) {
@@ -316,19 +359,26 @@ final class ByteBufAllocatorMetricsBinder {
     }
 
     private void meterChunk(Tags tags, PoolChunkMetric pcm) {
-        MeterRegistry meterRegistry = meterRegistryProvider.get();
+        gauge(dot(NETTY, ALLOC, ARENA, CHUNK, SIZE), pcm, PoolChunkMetric::chunkSize, "Return the size of the chunk in bytes, this is the maximum of bytes that can be served out of the chunk.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, CHUNK, USAGE), pcm, PoolChunkMetric::usage, "Return the percentage of the current usage of the chunk.",
+                tags);
+        gauge(dot(NETTY, ALLOC, ARENA, CHUNK, SIZE, AVAILABLE), pcm, PoolChunkMetric::freeBytes, "Return the number of free bytes in the chunk.",
+                tags);
+    }
 
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, CHUNK, SIZE), pcm, PoolChunkMetric::chunkSize)
-                .description("Return the size of the chunk in bytes, this is the maximum of bytes that can be served out of the chunk.")
-                .tags(tags)
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, CHUNK, USAGE), pcm, PoolChunkMetric::usage)
-                .description("Return the percentage of the current usage of the chunk.")
-                .tags(tags)
-                .register(meterRegistry);
-        Gauge.builder(dot(NETTY, ALLOC, ARENA, CHUNK, SIZE, AVAILABLE), pcm, PoolChunkMetric::freeBytes)
-                .description("Return the number of free bytes in the chunk.")
+    private static double sum(List<PoolArenaMetric> arenas, ToLongFunction<PoolArenaMetric> f) {
+        long sum = 0;
+        for (PoolArenaMetric arena : arenas) {
+            sum += f.applyAsLong(arena);
+        }
+        return sum;
+    }
+
+    private <T> void gauge(String name, T obj, ToDoubleFunction<T> f, String description, Tags tags) {
+        Gauge.Builder<?> builder = snapshot == null ? Gauge.builder(name, obj, f) : Gauge.builder(name, snapshot, snapshot.add(obj, f));
+        builder.description(description)
                 .tags(tags)
-                .register(meterRegistry);
+                .register(meterRegistryProvider.get());
     }
 }
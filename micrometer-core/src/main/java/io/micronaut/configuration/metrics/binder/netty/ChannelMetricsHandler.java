@@ -15,7 +15,9 @@
  */
 package io.micronaut.configuration.metrics.binder.netty;
 
+import io.micrometer.core.instrument.Clock;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
@@ -24,14 +26,20 @@ import io.micronaut.context.BeanProvider;
 import io.micronaut.core.annotation.Internal;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.LongAdder;
 
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ACTIVE;
@@ -40,10 +48,14 @@ import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.CHANN
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.COUNT;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ERROR;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.OUTBOUND;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.PENDING;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.READ;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.UNWRITABLE;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WRITTEN;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * Metrics for Netty Channels.
@@ -60,11 +72,11 @@ final class ChannelMetricsHandler extends ChannelDuplexHandler {
      */
     static final String CHANNEL_METRICS = "channel-metrics";
 
-    private static final String ACTIVE_CHANNEL_TIMER = "active-channel-timer";
+    private static final AttributeKey<ChannelState> CHANNEL_STATE = AttributeKey.valueOf(ChannelMetricsHandler.class, "state");
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ChannelMetricsHandler.class);
 
-    private final BeanProvider<MeterRegistry> meterRegistryProvider;
+    private final Clock clock;
 
     private final Counter bytesRead;
     private final Counter bytesWritten;
@@ -72,103 +84,242 @@ final class ChannelMetricsHandler extends ChannelDuplexHandler {
     private final Counter channelErrorCount;
     private final LongAdder activeChannelCount;
     private final Timer activeChannelTimer;
+    private final Counter unwritableCount;
+    private final Timer unwritableTimer;
+    private final LongAdder unwritableChannelCount;
+    private final Set<Channel> channels = ConcurrentHashMap.newKeySet();
+    private final Set<Class<?>> unsupportedTypes = ConcurrentHashMap.newKeySet();
 
-    ChannelMetricsHandler(BeanProvider<MeterRegistry> meterRegistryProvider) {
-        this.meterRegistryProvider = meterRegistryProvider;
-        activeChannelCount = meterRegistryProvider.get().gauge(dot(NETTY, CHANNEL, COUNT, ACTIVE), Tags.of(CHANNEL, ACTIVE), new LongAdder());
+    /**
+     * @param meterRegistryProvider The metrics registry provider.
+     * @param tags                  The tags of the channels handled by this instance, e.g. their listener and protocol.
+     */
+    ChannelMetricsHandler(BeanProvider<MeterRegistry> meterRegistryProvider, Tags tags) {
+        this.clock = meterRegistryProvider.get().config().clock();
+        activeChannelCount = meterRegistryProvider.get().gauge(dot(NETTY, CHANNEL, COUNT, ACTIVE), tags.and(CHANNEL, ACTIVE), new LongAdder());
         channelCount = Counter.builder(dot(NETTY, CHANNEL, COUNT))
+                .tags(tags)
                 .tag(CHANNEL, COUNT)
                 .register(meterRegistryProvider.get());
         channelErrorCount = Counter.builder(dot(NETTY, CHANNEL, COUNT))
+                .tags(tags)
                 .tag(CHANNEL, ERROR)
                 .register(meterRegistryProvider.get());
         bytesRead = Counter.builder(dot(NETTY, CHANNEL, BYTE))
+                .tags(tags)
                 .tag(BYTE, READ)
                 .baseUnit(BaseUnits.BYTES)
                 .register(meterRegistryProvider.get());
         bytesWritten = Counter.builder(dot(NETTY, CHANNEL, BYTE))
+                .tags(tags)
                 .tag(BYTE, WRITTEN)
                 .baseUnit(BaseUnits.BYTES)
                 .register(meterRegistryProvider.get());
         activeChannelTimer = Timer.builder(dot(NETTY, CHANNEL, TIME))
+                .tags(tags)
                 .tag(ACTIVE, TIME)
                 .publishPercentileHistogram()
                 .register(meterRegistryProvider.get());
+        unwritableCount = Counter.builder(dot(NETTY, CHANNEL, UNWRITABLE))
+                .description("The number of times a channel became unwritable because its outbound buffer exceeded the high watermark.")
+                .tags(tags)
+                .register(meterRegistryProvider.get());
+        unwritableTimer = Timer.builder(dot(NETTY, CHANNEL, UNWRITABLE, TIME))
+                .description("The time channels stayed unwritable.")
+                .tags(tags)
+                .register(meterRegistryProvider.get());
+        unwritableChannelCount = meterRegistryProvider.get().gauge(dot(NETTY, CHANNEL, UNWRITABLE, ACTIVE), tags, new LongAdder());
+        Gauge.builder(dot(NETTY, CHANNEL, PENDING, OUTBOUND, BYTE), channels, ChannelMetricsHandler::pendingOutboundBytes)
+                .description("The bytes queued in the outbound buffers of the channels.")
+                .tags(tags)
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistryProvider.get());
+    }
+
+    /**
+     * Hands a channel over to the handler of other tags, e.g. after a protocol upgrade. The bytes
+     * counted so far stay with this handler, the lifetime and the unwritable state move to the other
+     * handler. The channel stays counted in the channel count of this handler.
+     * Must be called on the event loop of the channel, before replacing this handler in its pipeline.
+     *
+     * @param channel The channel
+     * @param next    The handler taking the channel over
+     */
+    void handOver(Channel channel, ChannelMetricsHandler next) {
+        ChannelState state = channel.attr(CHANNEL_STATE).get();
+        if (state == null) {
+            return;
+        }
+        flushBytesRead(state);
+        flushBytesWritten(state);
+        channels.remove(channel);
+        activeChannelCount.decrement();
+        next.channels.add(channel);
+        next.activeChannelCount.increment();
+        if (state.unwritableSince != 0) {
+            unwritableChannelCount.decrement();
+            next.unwritableChannelCount.increment();
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        if (ctx.channel().isRegistered()) {
+            // the handler was added after the channel was registered, e.g. once TLS was negotiated
+            state(ctx);
+        }
     }
 
     @Override
     public void channelRegistered(ChannelHandlerContext ctx) {
-        channelCount.increment();
-        activeChannelCount.increment();
-        ctx.pipeline().addAfter(
-                CHANNEL_METRICS,
-                ACTIVE_CHANNEL_TIMER,
-                new ActiveChannelTimerHandler());
+        state(ctx);
         ctx.fireChannelRegistered();
     }
 
     @Override
     public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
-        activeChannelCount.decrement();
+        ChannelState state = ctx.channel().attr(CHANNEL_STATE).getAndSet(null);
+        if (state != null) {
+            activeChannelCount.decrement();
+            channels.remove(ctx.channel());
+            flushBytesRead(state);
+            flushBytesWritten(state);
+            writable(state);
+            activeChannelTimer.record(clock.monotonicTime() - state.registeredAt, NANOSECONDS);
+        }
         ctx.fireChannelUnregistered();
     }
 
     @Override
-    public void channelRead(ChannelHandlerContext ctx, Object msg) {
-        if (msg instanceof ByteBuf) {
-            final ByteBuf buffer = (ByteBuf) msg;
-            if (buffer.readableBytes() > 0) {
-                bytesRead.increment(buffer.readableBytes());
-            }
-        } else if (msg instanceof ByteBufHolder) {
-            final ByteBufHolder buffer = (ByteBufHolder) msg;
-            if (buffer.content().readableBytes() > 0) {
-                bytesRead.increment(buffer.content().readableBytes());
-            }
-        } else {
-            LOGGER.warn("Message type not supported: {}", msg.getClass());
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        ChannelState state = state(ctx);
+        if (ctx.channel().isWritable()) {
+            writable(state);
+        } else if (state.unwritableSince == 0) {
+            state.unwritableSince = clock.monotonicTime();
+            unwritableCount.increment();
+            unwritableChannelCount.increment();
         }
+        ctx.fireChannelWritabilityChanged();
+    }
 
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        long bytes = readableBytes(msg);
+        if (bytes > 0) {
+            state(ctx).bytesRead += bytes;
+        }
         ctx.fireChannelRead(msg);
     }
 
     @Override
-    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
-        if (msg instanceof ByteBuf) {
-            final ByteBuf buffer = (ByteBuf) msg;
-            if (buffer.readableBytes() > 0) {
-                bytesWritten.increment(buffer.readableBytes());
-            }
-        } else if (msg instanceof ByteBufHolder) {
-            final ByteBufHolder buffer = (ByteBufHolder) msg;
-            if (buffer.content().readableBytes() > 0) {
-                bytesWritten.increment(buffer.content().readableBytes());
-            }
-        } else {
-            LOGGER.warn("Message type not supported: {}", msg.getClass().getName());
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ChannelState state = ctx.channel().attr(CHANNEL_STATE).get();
+        if (state != null) {
+            flushBytesRead(state);
         }
+        ctx.fireChannelReadComplete();
+    }
 
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        long bytes = readableBytes(msg);
+        if (bytes > 0) {
+            state(ctx).bytesWritten += bytes;
+        }
         ctx.write(msg, promise);
     }
 
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        ChannelState state = ctx.channel().attr(CHANNEL_STATE).get();
+        if (state != null) {
+            flushBytesWritten(state);
+        }
+        ctx.flush();
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         channelErrorCount.increment();
         ctx.fireExceptionCaught(cause);
     }
 
-    private class ActiveChannelTimerHandler extends ChannelInboundHandlerAdapter {
-        private final Timer.Sample start;
+    private ChannelState state(ChannelHandlerContext ctx) {
+        Attribute<ChannelState> attribute = ctx.channel().attr(CHANNEL_STATE);
+        ChannelState state = attribute.get();
+        if (state == null) {
+            state = new ChannelState(clock.monotonicTime());
+            attribute.set(state);
+            channelCount.increment();
+            activeChannelCount.increment();
+            channels.add(ctx.channel());
+        }
+        return state;
+    }
 
-        ActiveChannelTimerHandler() {
-            start = Timer.start(meterRegistryProvider.get());
+    private void writable(ChannelState state) {
+        if (state.unwritableSince != 0) {
+            unwritableTimer.record(clock.monotonicTime() - state.unwritableSince, NANOSECONDS);
+            unwritableChannelCount.decrement();
+            state.unwritableSince = 0;
         }
+    }
+
+    private static double pendingOutboundBytes(Set<Channel> channels) {
+        long pending = 0;
+        for (Channel channel : channels) {
+            ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+            if (buffer != null) {
+                pending += buffer.totalPendingWriteBytes();
+            }
+        }
+        return pending;
+    }
+
+    private void flushBytesRead(ChannelState state) {
+        if (state.bytesRead > 0) {
+            bytesRead.increment(state.bytesRead);
+            state.bytesRead = 0;
+        }
+    }
+
+    private void flushBytesWritten(ChannelState state) {
+        if (state.bytesWritten > 0) {
+            bytesWritten.increment(state.bytesWritten);
+            state.bytesWritten = 0;
+        }
+    }
+
+    private long readableBytes(Object msg) {
+        if (msg instanceof ByteBuf buffer) {
+            return buffer.readableBytes();
+        }
+        if (msg instanceof ByteBufHolder holder) {
+            return holder.content().readableBytes();
+        }
+        if (msg instanceof FileRegion region) {
+            return region.count();
+        }
+        if (unsupportedTypes.add(msg.getClass())) {
+            LOGGER.warn("Message type not supported, its bytes are not counted: {}", msg.getClass().getName());
+        }
+        return 0;
+    }
+
+    /**
+     * The metrics state of a channel, stored as a channel attribute. Only accessed by the event
+     * loop of the channel, the byte counts accumulate there until the channel reads are complete
+     * or the channel is flushed. The unwritable timestamp is zero while the channel is writable.
+     */
+    private static final class ChannelState {
+        private final long registeredAt;
+        private long bytesRead;
+        private long bytesWritten;
+        private long unwritableSince;
 
-        @Override
-        public void channelUnregistered(ChannelHandlerContext ctx) {
-            start.stop(activeChannelTimer);
-            ctx.pipeline().remove(this);
-            ctx.fireChannelUnregistered();
+        ChannelState(long registeredAt) {
+            this.registeredAt = registeredAt;
         }
     }
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Internal;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EVENTLOOP;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.GROUP;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NUMBER;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.STALL;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS;
+import static io.micronaut.core.util.StringUtils.FALSE;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Detects stalled event loops of the instrumented event loop groups.
+ * <p>
+ * A watchdog thread periodically submits a heartbeat task to every event loop. An event loop
+ * whose heartbeat has not run within the threshold is blocked by the task or the I/O handler it
+ * is running: the stall is counted as soon as it is detected, the stack of the event loop thread
+ * is optionally logged, and the stall duration is recorded once the heartbeat finally runs.
+ * The heartbeats are not recorded in the queue metrics, but each of them wakes up an idle event
+ * loop once per interval, which slightly raises its measured utilization.
+ *
+ * @since 5.6.0
+ */
+@Singleton
+@RequiresMetrics
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled", defaultValue = FALSE, notEquals = FALSE)
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.stall.enabled", defaultValue = FALSE, notEquals = FALSE)
+@Internal
+final class EventLoopStallDetector implements InstrumentedEventLoopGroupListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoopStallDetector.class);
+
+    private final BeanProvider<MeterRegistry> meterRegistryProvider;
+    private final long thresholdNanos;
+    private final boolean captureStack;
+    private final long intervalNanos;
+    private final List<WatchedEventLoop> eventLoops = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService watchdog;
+
+    /**
+     * @param meterRegistryProvider the metric registry provider
+     * @param threshold             the time after which a busy event loop is considered stalled
+     * @param interval              the interval between two checks of the event loops
+     * @param captureStack          whether to log the stack of the stalled event loop threads
+     */
+    public EventLoopStallDetector(BeanProvider<MeterRegistry> meterRegistryProvider,
+                                  @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.stall.threshold:1s}") Duration threshold,
+                                  @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.stall.interval:200ms}") Duration interval,
+                                  @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.stall.capture-stack:false}") boolean captureStack) {
+        this.meterRegistryProvider = meterRegistryProvider;
+        this.thresholdNanos = threshold.toNanos();
+        this.captureStack = captureStack;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    /**
+     * Starts the watchdog.
+     */
+    @PostConstruct
+    void start() {
+        watchdog = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("netty-stall-detector", true));
+        watchdog.scheduleWithFixedDelay(this::check, intervalNanos, intervalNanos, NANOSECONDS);
+    }
+
+    @Override
+    public void onCreated(List<InstrumentedEventLoop> eventLoops) {
+        MeterRegistry meterRegistry = meterRegistryProvider.get();
+        for (InstrumentedEventLoop eventLoop : eventLoops) {
+            this.eventLoops.add(new WatchedEventLoop(eventLoop, meterRegistry));
+        }
+    }
+
+    /**
+     * Stops the watchdog.
+     */
+    @PreDestroy
+    void close() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    private void check() {
+        for (WatchedEventLoop eventLoop : eventLoops) {
+            try {
+                if (!eventLoop.check()) {
+                    eventLoops.remove(eventLoop);
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Unable to check event loop {}", eventLoop.name, e);
+            }
+        }
+    }
+
+    /**
+     * The heartbeat state of an event loop, only checked by the watchdog thread.
+     */
+    private final class WatchedEventLoop implements Runnable {
+
+        private static final long NOT_RUN = Long.MIN_VALUE;
+
+        private final EventLoop eventLoop;
+        private final MonitoredQueue queue;
+        private final String name;
+        private final Clock clock;
+        private final Counter stallCounter;
+        private final Timer stallTimer;
+        private volatile Thread thread;
+        private volatile long ranAt = NOT_RUN;
+        private long submittedAt;
+        private boolean pending;
+        private boolean stalled;
+
+        WatchedEventLoop(InstrumentedEventLoop instrumented, MeterRegistry meterRegistry) {
+            this.eventLoop = instrumented.eventLoop();
+            this.queue = instrumented.queue();
+            this.name = instrumented.group() + "-" + instrumented.index();
+            this.clock = meterRegistry.config().clock();
+            Tags tags = Tags.of(GROUP, instrumented.group()).and(NUMBER, Integer.toString(instrumented.index()));
+            this.stallCounter = Counter.builder(dot(NETTY, EVENTLOOP, STALL))
+                    .description("The number of times the event loop did not run queued tasks within the stall threshold.")
+                    .tags(tags)
+                    .register(meterRegistry);
+            this.stallTimer = Timer.builder(dot(NETTY, EVENTLOOP, STALL, TIME))
+                    .description("The duration of the event loop stalls.")
+                    .tags(tags)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * Runs on the event loop.
+         */
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            ranAt = clock.monotonicTime();
+        }
+
+        /**
+         * @return false when the event loop is shut down and no longer needs to be checked
+         */
+        boolean check() {
+            if (eventLoop.isShuttingDown()) {
+                return false;
+            }
+            long now = clock.monotonicTime();
+            if (pending) {
+                long ran = ranAt;
+                if (ran != NOT_RUN) {
+                    if (stalled) {
+                        stallTimer.record(ran - submittedAt, NANOSECONDS);
+                        stalled = false;
+                    }
+                    pending = false;
+                } else {
+                    if (!stalled && now - submittedAt >= thresholdNanos) {
+                        stalled = true;
+                        stallCounter.increment();
+                        logStall();
+                    }
+                    return true;
+                }
+            }
+            ranAt = NOT_RUN;
+            submittedAt = now;
+            pending = true;
+            queue.exclude(this);
+            try {
+                eventLoop.execute(this);
+            } catch (RejectedExecutionException e) {
+                queue.include(this);
+                return false;
+            }
+            return true;
+        }
+
+        private void logStall() {
+            if (!LOGGER.isWarnEnabled()) {
+                return;
+            }
+            Thread stalledThread = thread;
+            String message = "Event loop " + name + " has not run queued tasks for more than " + NANOSECONDS.toMillis(thresholdNanos) + "ms";
+            if (captureStack && stalledThread != null) {
+                Throwable stack = new Throwable("Stack of " + stalledThread.getName());
+                stack.setStackTrace(stalledThread.getStackTrace());
+                LOGGER.warn(message, stack);
+            } else {
+                LOGGER.warn(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.annotation.Internal;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import jakarta.inject.Singleton;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.BUSY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EVENTLOOP;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.GROUP;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.IO;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LATENCY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MAX;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NUMBER;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.PENDING;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TASK;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.UTILIZATION;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS;
+import static io.micronaut.core.util.StringUtils.FALSE;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Exposes the utilization of the event loops of the instrumented event loop groups.
+ * <p>
+ * Both the busy time and the task time are measured with the CPU clock of the event loop thread,
+ * so the time spent waiting in {@code select}/{@code epoll_wait}/{@code kevent}, as well as the
+ * time a task spends blocked or sleeping, counts as idle. The busy time is the CPU time of the
+ * thread, the task time is the CPU time of the timed queued tasks, extrapolated when the tasks
+ * are sampled, and the remaining busy time is attributed to I/O processing.
+ *
+ * @since 5.6.0
+ */
+@Singleton
+@RequiresMetrics
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled", defaultValue = FALSE, notEquals = FALSE)
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.utilization.enabled", defaultValue = FALSE, notEquals = FALSE)
+@Internal
+final class EventLoopUtilizationBinder implements InstrumentedEventLoopGroupListener {
+
+    private static final String UNIT_SECONDS = "seconds";
+
+    private final BeanProvider<MeterRegistry> meterRegistryProvider;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * @param meterRegistryProvider the metric registry provider
+     */
+    public EventLoopUtilizationBinder(BeanProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public void onCreated(List<InstrumentedEventLoop> eventLoops) {
+        MeterRegistry meterRegistry = meterRegistryProvider.get();
+        for (InstrumentedEventLoop eventLoop : eventLoops) {
+            bind(meterRegistry, eventLoop);
+        }
+    }
+
+    private void bind(MeterRegistry meterRegistry, InstrumentedEventLoop eventLoop) {
+        Tags tags = Tags.of(GROUP, eventLoop.group()).and(NUMBER, Integer.toString(eventLoop.index()));
+        Utilization utilization = new Utilization(eventLoop.queue(), meterRegistry.config().clock());
+
+        FunctionCounter.builder(dot(NETTY, EVENTLOOP, BUSY, TIME), utilization, Utilization::busyTime)
+                .description("The CPU time consumed by the event loop thread.")
+                .baseUnit(UNIT_SECONDS)
+                .tags(tags)
+                .register(meterRegistry);
+        FunctionCounter.builder(dot(NETTY, EVENTLOOP, TASK, TIME), utilization, Utilization::taskTime)
+                .description("The estimated CPU time spent running queued tasks.")
+                .baseUnit(UNIT_SECONDS)
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder(dot(NETTY, EVENTLOOP, UTILIZATION), utilization, Utilization::busyRatio)
+                .description("The ratio of time the event loop was busy since the previous sample.")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder(dot(NETTY, EVENTLOOP, UTILIZATION, IO), utilization, Utilization::ioRatio)
+                .description("The ratio of time the event loop spent processing I/O since the previous sample.")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder(dot(NETTY, EVENTLOOP, UTILIZATION, TASK), utilization, Utilization::taskRatio)
+                .description("The ratio of time the event loop spent running queued tasks since the previous sample.")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder(dot(NETTY, EVENTLOOP, PENDING, TASK), eventLoop, EventLoopUtilizationBinder::pendingTasks)
+                .description("The number of tasks pending on the event loop.")
+                .tags(tags)
+                .register(meterRegistry);
+        TimeGauge.builder(dot(NETTY, EVENTLOOP, TASK, LATENCY, MAX), eventLoop.queue().recorder(), NANOSECONDS, r -> r.waitTimeMax(NANOSECONDS))
+                .description("The maximum time a timed task waited before running over the current step.")
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    private static double pendingTasks(InstrumentedEventLoop eventLoop) {
+        if (eventLoop.eventLoop() instanceof SingleThreadEventExecutor executor) {
+            return executor.pendingTasks();
+        }
+        return eventLoop.queue().size();
+    }
+
+    /**
+     * The utilization of an event loop, computed between two samples.
+     */
+    private final class Utilization {
+
+        private static final long MIN_WINDOW = SECONDS.toNanos(1);
+
+        private final MonitoredQueue queue;
+        private final TaskCpuTime taskCpuTime;
+        private final Clock clock;
+        private long lastSampledAt;
+        private double lastBusyTime;
+        private double lastTaskTime;
+        private double busyRatio = Double.NaN;
+        private double taskRatio = Double.NaN;
+
+        Utilization(MonitoredQueue queue, Clock clock) {
+            this.queue = queue;
+            this.taskCpuTime = threadMXBean.isCurrentThreadCpuTimeSupported() ? queue.measureTaskCpuTime(threadMXBean) : null;
+            this.clock = clock;
+            this.lastSampledAt = clock.monotonicTime();
+        }
+
+        /**
+         * @return The CPU time of the event loop thread in seconds, NaN when it is not available
+         */
+        double busyTime() {
+            Thread thread = queue.consumer();
+            if (thread == null) {
+                return 0;
+            }
+            if (!threadMXBean.isThreadCpuTimeSupported() || !threadMXBean.isThreadCpuTimeEnabled()) {
+                return Double.NaN;
+            }
+            long cpuTime = threadMXBean.getThreadCpuTime(thread.getId());
+            return cpuTime < 0 ? Double.NaN : (double) cpuTime / SECONDS.toNanos(1);
+        }
+
+        /**
+         * @return The estimated CPU time spent running queued tasks in seconds, NaN when it is not available
+         */
+        double taskTime() {
+            return taskCpuTime == null ? Double.NaN : taskCpuTime.estimated(SECONDS);
+        }
+
+        synchronized double busyRatio() {
+            sample();
+            return busyRatio;
+        }
+
+        synchronized double taskRatio() {
+            sample();
+            return taskRatio;
+        }
+
+        synchronized double ioRatio() {
+            sample();
+            return Math.max(0, busyRatio - taskRatio);
+        }
+
+        private void sample() {
+            long now = clock.monotonicTime();
+            long elapsed = now - lastSampledAt;
+            if (elapsed < MIN_WINDOW) {
+                return;
+            }
+            double busyTime = busyTime();
+            double taskTime = taskTime();
+            if (Double.isNaN(busyTime) || Double.isNaN(taskTime)) {
+                // only this reading is unavailable, the next sample covers the whole window again
+                busyRatio = Double.NaN;
+                taskRatio = Double.NaN;
+                return;
+            }
+            double window = (double) elapsed / SECONDS.toNanos(1);
+            busyRatio = Math.min(1, (busyTime - lastBusyTime) / window);
+            taskRatio = Math.min(busyRatio, (taskTime - lastTaskTime) / window);
+            lastSampledAt = now;
+            lastBusyTime = busyTime;
+            lastTaskTime = taskTime;
+        }
+    }
+}
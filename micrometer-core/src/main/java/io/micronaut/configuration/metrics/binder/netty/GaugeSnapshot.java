@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Clock;
+import io.micronaut.core.annotation.Internal;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Collects the values of a set of gauges in a single pass, at most once per interval, into
+ * an immutable array the gauges read from.
+ * <p>
+ * Used for the gauges whose value function is expensive or contends with the measured
+ * structure, such as the pooled allocator arenas, so that publishing them to several
+ * registries or scraping them often does not walk the structures again.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class GaugeSnapshot {
+
+    private final Clock clock;
+    private final long intervalNanos;
+    private final List<Slot<?>> slots = new ArrayList<>();
+    private volatile double[] values = new double[0];
+    private volatile long collectedAt;
+
+    /**
+     * @param clock    The clock of the meter registry.
+     * @param interval The time the collected values are reused.
+     */
+    GaugeSnapshot(Clock clock, Duration interval) {
+        this.clock = clock;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    /**
+     * Adds a value to the snapshot.
+     *
+     * @param obj The object the value is computed from.
+     * @param f   The function computing the value.
+     * @param <T> The type of the object.
+     * @return The function a gauge of this snapshot reads the value with.
+     */
+    synchronized <T> ToDoubleFunction<GaugeSnapshot> add(T obj, ToDoubleFunction<T> f) {
+        slots.add(new Slot<>(obj, f));
+        final int index = slots.size() - 1;
+        return snapshot -> snapshot.value(index);
+    }
+
+    private double value(int index) {
+        double[] current = values;
+        if (index >= current.length || clock.monotonicTime() - collectedAt >= intervalNanos) {
+            current = collect(index);
+        }
+        return current[index];
+    }
+
+    private synchronized double[] collect(int index) {
+        double[] current = values;
+        long now = clock.monotonicTime();
+        if (index < current.length && now - collectedAt < intervalNanos) {
+            // collected by another thread in the meantime
+            return current;
+        }
+        double[] collected = new double[slots.size()];
+        for (int i = 0; i < collected.length; i++) {
+            collected[i] = slots.get(i).value();
+        }
+        collectedAt = now;
+        values = collected;
+        return collected;
+    }
+
+    /**
+     * A value of the snapshot.
+     *
+     * @param obj The object the value is computed from.
+     * @param f   The function computing the value.
+     * @param <T> The type of the object.
+     */
+    private record Slot<T>(T obj, ToDoubleFunction<T> f) {
+        double value() {
+            return f.applyAsDouble(obj);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.core.annotation.Internal;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionAdapter;
+import io.netty.handler.codec.http2.Http2ConnectionDecoder;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2FrameListener;
+import io.netty.handler.codec.http2.Http2FrameListenerDecorator;
+import io.netty.handler.codec.http2.Http2RemoteFlowController;
+import io.netty.handler.codec.http2.Http2Stream;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ACTIVE;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.CONCURRENCY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.DIRECTION;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.FLOW_CONTROL;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.GOAWAY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.HTTP2;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.RECEIVED;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.RST;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SENT;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.STALL;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.STREAM;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * HTTP/2 stream metrics, shared by the connections of a listener.
+ * <p>
+ * The meters are updated by a {@link Http2Connection.Listener} and a decorator of the
+ * frame listener of each connection, so they are only touched by the event loop of the
+ * connection and the HTTP/2 codec is left untouched otherwise.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class Http2StreamMetrics {
+
+    private final Clock clock;
+    private final LongAdder activeStreams;
+    private final DistributionSummary concurrentStreams;
+    private final Timer streamTimer;
+    private final Counter resetSent;
+    private final Counter resetReceived;
+    private final Counter goAwaySent;
+    private final Counter goAwayReceived;
+    private final Counter flowControlStalls;
+
+    /**
+     * @param meterRegistry The meter registry.
+     * @param tags          The tags of the connections, e.g. their listener.
+     */
+    Http2StreamMetrics(MeterRegistry meterRegistry, Tags tags) {
+        this.clock = meterRegistry.config().clock();
+        activeStreams = meterRegistry.gauge(dot(NETTY, HTTP2, STREAM, ACTIVE), tags, new LongAdder());
+        concurrentStreams = DistributionSummary.builder(dot(NETTY, HTTP2, STREAM, CONCURRENCY))
+                .description("The number of active streams of the connection when a stream becomes active.")
+                .tags(tags)
+                .register(meterRegistry);
+        streamTimer = Timer.builder(dot(NETTY, HTTP2, STREAM, TIME))
+                .description("The time between a stream becoming active and its closure.")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        resetSent = Counter.builder(dot(NETTY, HTTP2, RST, STREAM))
+                .tags(tags)
+                .tag(DIRECTION, SENT)
+                .register(meterRegistry);
+        resetReceived = Counter.builder(dot(NETTY, HTTP2, RST, STREAM))
+                .tags(tags)
+                .tag(DIRECTION, RECEIVED)
+                .register(meterRegistry);
+        goAwaySent = Counter.builder(dot(NETTY, HTTP2, GOAWAY))
+                .tags(tags)
+                .tag(DIRECTION, SENT)
+                .register(meterRegistry);
+        goAwayReceived = Counter.builder(dot(NETTY, HTTP2, GOAWAY))
+                .tags(tags)
+                .tag(DIRECTION, RECEIVED)
+                .register(meterRegistry);
+        flowControlStalls = Counter.builder(dot(NETTY, HTTP2, FLOW_CONTROL, STALL))
+                .description("The number of times the peer reopened an exhausted send window of a stream or of the connection.")
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts recording the streams of a connection.
+     *
+     * @param handler The HTTP/2 connection handler
+     */
+    void bind(Http2ConnectionHandler handler) {
+        Http2Connection connection = handler.connection();
+        connection.addListener(new StreamListener(connection));
+        Http2ConnectionDecoder decoder = handler.decoder();
+        decoder.frameListener(new FrameListener(decoder.frameListener(), connection, handler.encoder().flowController()));
+    }
+
+    /**
+     * Records the stream lifecycle of a connection.
+     */
+    private final class StreamListener extends Http2ConnectionAdapter {
+        private final Http2Connection connection;
+        private final Http2Connection.PropertyKey activeSince;
+
+        StreamListener(Http2Connection connection) {
+            this.connection = connection;
+            this.activeSince = connection.newKey();
+        }
+
+        @Override
+        public void onStreamActive(Http2Stream stream) {
+            stream.setProperty(activeSince, clock.monotonicTime());
+            activeStreams.increment();
+            concurrentStreams.record(connection.numActiveStreams());
+        }
+
+        @Override
+        public void onStreamClosed(Http2Stream stream) {
+            Long since = stream.removeProperty(activeSince);
+            if (since != null) {
+                activeStreams.decrement();
+                streamTimer.record(clock.monotonicTime() - since, NANOSECONDS);
+            }
+            if (stream.isResetSent()) {
+                resetSent.increment();
+            }
+        }
+
+        @Override
+        public void onGoAwaySent(int lastStreamId, long errorCode, ByteBuf debugData) {
+            goAwaySent.increment();
+        }
+
+        @Override
+        public void onGoAwayReceived(int lastStreamId, long errorCode, ByteBuf debugData) {
+            goAwayReceived.increment();
+        }
+    }
+
+    /**
+     * Counts the frames that are not reported to the connection listeners.
+     */
+    private final class FrameListener extends Http2FrameListenerDecorator {
+        private final Http2Connection connection;
+        private final Http2RemoteFlowController flowController;
+
+        FrameListener(Http2FrameListener listener, Http2Connection connection, Http2RemoteFlowController flowController) {
+            super(listener);
+            this.connection = connection;
+            this.flowController = flowController;
+        }
+
+        @Override
+        public void onRstStreamRead(ChannelHandlerContext ctx, int streamId, long errorCode) throws Http2Exception {
+            resetReceived.increment();
+            super.onRstStreamRead(ctx, streamId, errorCode);
+        }
+
+        @Override
+        public void onWindowUpdateRead(ChannelHandlerContext ctx, int streamId, int windowSizeIncrement) throws Http2Exception {
+            // the decoder applies the increment before notifying the listener
+            Http2Stream stream = streamId == Http2CodecUtil.CONNECTION_STREAM_ID ? connection.connectionStream() : connection.stream(streamId);
+            if (stream != null && flowController.windowSize(stream) <= windowSizeIncrement) {
+                flowControlStalls.increment();
+            }
+            super.onWindowUpdateRead(ctx, streamId, windowSizeIncrement);
+        }
+    }
+}
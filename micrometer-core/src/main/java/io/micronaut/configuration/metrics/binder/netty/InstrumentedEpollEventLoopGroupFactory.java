@@ -70,34 +70,31 @@ final class InstrumentedEpollEventLoopGroupFactory implements EventLoopGroupFact
     }
 
     @Override
-    public EventLoopGroup createEventLoopGroup(int threads, @Nullable Integer ioRatio) {
-        return new EpollEventLoopGroup(threads, null,
-                DefaultEventExecutorChooserFactory.INSTANCE,
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory);
+    public EventLoopGroup createEventLoopGroup(int threads,
+                                               @Nullable Integer ioRatio) {
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, null);
     }
 
     @Override
     public EventLoopGroup createEventLoopGroup(int threads,
                                                ThreadFactory threadFactory,
                                                @Nullable Integer ioRatio) {
-        return new EpollEventLoopGroup(threads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory),
-                DefaultEventExecutorChooserFactory.INSTANCE,
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory);
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory));
     }
 
     @Override
     public EventLoopGroup createEventLoopGroup(int threads,
                                                Executor executor,
                                                @Nullable Integer ioRatio) {
-        return new EpollEventLoopGroup(threads, executor,
-                DefaultEventExecutorChooserFactory.INSTANCE,
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory);
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, executor);
+    }
+
+    @Override
+    public EventLoopGroup createEventLoopGroup(EventLoopGroupConfiguration configuration,
+                                               ThreadFactory threadFactory) {
+        return newEventLoopGroup(configuration.getName(),
+                configuration.getNumThreads(),
+                new ThreadPerTaskExecutor(threadFactory));
     }
 
     @Override
@@ -115,4 +112,15 @@ final class InstrumentedEpollEventLoopGroupFactory implements EventLoopGroupFact
     public boolean isNative() {
         return true;
     }
+
+    private EventLoopGroup newEventLoopGroup(@Nullable String groupName,
+                                             int threads,
+                                             @Nullable Executor executor) {
+        return instrumentedEventLoopTaskQueueFactory.instrument(groupName, (taskQueueFactory, tailTaskQueueFactory) -> new EpollEventLoopGroup(threads, executor,
+                DefaultEventExecutorChooserFactory.INSTANCE,
+                DefaultSelectStrategyFactory.INSTANCE,
+                RejectedExecutionHandlers.reject(),
+                taskQueueFactory,
+                tailTaskQueueFactory));
+    }
 }
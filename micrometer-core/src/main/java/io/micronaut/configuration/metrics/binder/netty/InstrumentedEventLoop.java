@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micronaut.core.annotation.Internal;
+import io.netty.channel.EventLoop;
+
+/**
+ * An event loop of an instrumented event loop group, with its instrumented task queue.
+ *
+ * @param group     The group tag value
+ * @param eventLoop The event loop
+ * @param queue     The task queue of the event loop
+ * @since 5.6.0
+ */
+@Internal
+record InstrumentedEventLoop(String group, EventLoop eventLoop, MonitoredQueue queue) {
+
+    /**
+     * @return The number of the event loop within its group, shared with its queue metrics
+     */
+    int index() {
+        return queue.index();
+    }
+}
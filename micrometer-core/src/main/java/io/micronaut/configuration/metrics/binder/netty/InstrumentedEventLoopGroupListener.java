@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micronaut.core.annotation.Internal;
+
+import java.util.List;
+
+/**
+ * Notified of every event loop group created by the instrumented event loop group factories.
+ *
+ * @since 5.6.0
+ */
+@Internal
+interface InstrumentedEventLoopGroupListener {
+
+    /**
+     * @param eventLoops The event loops of the created group
+     */
+    void onCreated(List<InstrumentedEventLoop> eventLoops);
+}
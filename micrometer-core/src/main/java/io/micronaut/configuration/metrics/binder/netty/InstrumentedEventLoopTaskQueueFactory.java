@@ -16,21 +16,35 @@
 package io.micronaut.configuration.metrics.binder.netty;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Timer;
 import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
 import io.micronaut.context.BeanProvider;
 import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
 import io.micronaut.core.annotation.Internal;
-import io.micronaut.http.server.netty.NettyHttpServer;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.netty.channel.EventLoopGroupConfiguration;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.EventLoopTaskQueueFactory;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.internal.PlatformDependent;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.COUNT;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ELEMENT;
@@ -40,14 +54,23 @@ import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.GROUP
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.PARENT;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.QUEUE;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SIZE;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TAIL;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WAIT_TIME;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WORKER;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
 import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS;
 import static io.micronaut.core.util.StringUtils.FALSE;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * Instrumented Event Loop Queue factory.
+ * <p>
+ * The instrumented event loop group factories create their groups through
+ * {@link #instrument(String, BiFunction)}, which passes queue factories bound to the
+ * group being created, so that the queues are tagged with their group without
+ * inspecting the call stack. Both the task queues and the tail task queues, running
+ * after each event loop iteration, are instrumented.
  *
  * @author Christophe Roudet
  * @since 2.0
@@ -60,73 +83,214 @@ import static io.micronaut.core.util.StringUtils.FALSE;
 @Internal
 final class InstrumentedEventLoopTaskQueueFactory implements EventLoopTaskQueueFactory {
 
-    private static final AtomicInteger PARENT_COUNTER = new AtomicInteger(-1);
-    private static final AtomicInteger WORKER_COUNTER = new AtomicInteger(-1);
+    private static final String NETTY_HTTP_SERVER = "io.micronaut.http.server.netty.NettyHttpServer";
+    private static final String PARENT_GROUP_NAME = "parent";
 
     private final BeanProvider<MeterRegistry> meterRegistryProvider;
-    private final Counter parentTaskCounter;
-    private final Counter workerTaskCounter;
-    private final Timer globalParentWaitTimeTimer;
-    private final Timer globalParentExecutionTimer;
-    private final Timer globalWorkerWaitTimeTimer;
-    private final Timer globalWorkerExecutionTimer;
+    private final QueueMetricsMode mode;
+    private final int sampleRate;
+    private final Duration sampleInterval;
+    private final List<InstrumentedEventLoopGroupListener> listeners;
+    private final Map<String, GroupMeters> groups = new ConcurrentHashMap<>();
+
+    /**
+     * The way the tasks of the queues are measured.
+     */
+    enum QueueMetricsMode {
+        /**
+         * Every task is recorded into timers publishing percentile histograms.
+         */
+        DETAILED,
+        /**
+         * Tasks only carry their enqueue time and are accumulated per event loop,
+         * published as function timers and maximum gauges without histograms.
+         */
+        LIGHTWEIGHT
+    }
 
     /**
      * @param meterRegistryProvider the metric registry provider
+     * @param mode                  the way the tasks are measured
+     * @param sampleRate            time one task out of {@code sampleRate}
+     * @param sampleInterval        time at most one task per interval and per queue, overrides the sample rate
+     * @param listeners             the listeners notified of the instrumented event loop groups
      */
-    public InstrumentedEventLoopTaskQueueFactory(BeanProvider<MeterRegistry> meterRegistryProvider) {
+    public InstrumentedEventLoopTaskQueueFactory(BeanProvider<MeterRegistry> meterRegistryProvider,
+                                                 @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.queues.mode:DETAILED}") QueueMetricsMode mode,
+                                                 @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.queues.sample-rate:1}") int sampleRate,
+                                                 @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.queues.sample-interval:0s}") Duration sampleInterval,
+                                                 List<InstrumentedEventLoopGroupListener> listeners) {
         this.meterRegistryProvider = meterRegistryProvider;
-        globalParentWaitTimeTimer = Timer.builder(dot(NETTY, QUEUE, GLOBAL, WAIT_TIME))
-                .description("Global wait time spent in the parent Queues.")
-                .tag(GROUP, PARENT)
-                .publishPercentileHistogram()
-                .register(meterRegistryProvider.get());
-        globalParentExecutionTimer = Timer.builder(dot(NETTY, QUEUE, GLOBAL, EXECUTION_TIME))
-                .description("Global parent runnable execution time.")
-                .tag(GROUP, PARENT)
-                .publishPercentileHistogram()
-                .register(meterRegistryProvider.get());
-        globalWorkerWaitTimeTimer = Timer.builder(dot(NETTY, QUEUE, GLOBAL, WAIT_TIME))
-                .description("Global wait time spent in the worker Queues.")
-                .tag(GROUP, WORKER)
-                .publishPercentileHistogram()
-                .register(meterRegistryProvider.get());
-        globalWorkerExecutionTimer = Timer.builder(dot(NETTY, QUEUE, GLOBAL, EXECUTION_TIME))
-                .description("Global worker runnable execution time.")
-                .tag(GROUP, WORKER)
-                .publishPercentileHistogram()
-                .register(meterRegistryProvider.get());
-        parentTaskCounter = Counter.builder(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT))
-                .tag(GROUP, PARENT)
-                .register(meterRegistryProvider.get());
-        workerTaskCounter = Counter.builder(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT))
-                .tag(GROUP, WORKER)
-                .register(meterRegistryProvider.get());
+        this.listeners = listeners;
+        this.mode = mode;
+        this.sampleRate = sampleRate;
+        this.sampleInterval = sampleInterval;
+        group(PARENT);
+        group(WORKER);
+    }
+
+    /**
+     * Creates an event loop group whose queues are instrumented and tagged with the given group,
+     * then notifies the {@link InstrumentedEventLoopGroupListener}s of its event loops.
+     *
+     * @param groupName The name of the event loop group configuration, see {@link EventLoopGroupConfiguration#getName()}
+     * @param creator   Creates the event loop group with the given task queue and tail task queue factories
+     * @param <G>       The type of event loop group
+     * @return The created event loop group
+     */
+    <G extends EventLoopGroup> G instrument(@Nullable String groupName, BiFunction<EventLoopTaskQueueFactory, EventLoopTaskQueueFactory, G> creator) {
+        final GroupMeters group = group(groupTag(groupName));
+        final List<MonitoredQueue> queues = new ArrayList<>();
+        final G eventLoopGroup = creator.apply(maxCapacity -> {
+            MonitoredQueue queue = newTaskQueue(group, maxCapacity);
+            queues.add(queue);
+            return queue;
+        }, maxCapacity -> newTailTaskQueue(group, maxCapacity));
+        if (!listeners.isEmpty()) {
+            final List<InstrumentedEventLoop> eventLoops = new ArrayList<>(queues.size());
+            for (EventExecutor executor : eventLoopGroup) {
+                if (executor instanceof EventLoop eventLoop && eventLoops.size() < queues.size()) {
+                    eventLoops.add(new InstrumentedEventLoop(group.name, eventLoop, queues.get(eventLoops.size())));
+                }
+            }
+            for (InstrumentedEventLoopGroupListener listener : listeners) {
+                listener.onCreated(eventLoops);
+            }
+        }
+        return eventLoopGroup;
     }
 
     @Override
     public Queue<Runnable> newTaskQueue(int maxCapacity) {
-        final String kind = findOrigin();
-        final boolean parent = PARENT.equals(kind);
-        return new MonitoredQueue(parent ? PARENT_COUNTER.incrementAndGet() : WORKER_COUNTER.incrementAndGet(),
-                meterRegistryProvider.get(),
-                Tag.of(GROUP, kind),
-                parent ? parentTaskCounter : workerTaskCounter,
-                parent ? globalParentWaitTimeTimer : globalWorkerWaitTimeTimer,
-                parent ? globalParentExecutionTimer : globalWorkerExecutionTimer,
-                maxCapacity == Integer.MAX_VALUE ? PlatformDependent.<Runnable>newMpscQueue() : PlatformDependent.<Runnable>newMpscQueue(maxCapacity));
+        return newTaskQueue(group(findOrigin()), maxCapacity);
     }
 
-    private String findOrigin() {
-        for (StackTraceElement elt: Thread.currentThread().getStackTrace()) {
-            if (NettyHttpServer.class.getName().equals(elt.getClassName()) && "createWorkerEventLoopGroup".equals(elt.getMethodName())) {
-                return WORKER;
-            }
-            if (NettyHttpServer.class.getName().equals(elt.getClassName()) && "createParentEventLoopGroup".equals(elt.getMethodName())) {
-                return PARENT;
-            }
+    private MonitoredQueue newTaskQueue(GroupMeters group, int maxCapacity) {
+        final int index = group.counter.incrementAndGet();
+        final MeterRegistry meterRegistry = meterRegistryProvider.get();
+        final Tag tag = Tag.of(GROUP, group.name);
+        final QueueTaskSampler sampler = QueueTaskSampler.create(sampleRate, sampleInterval, meterRegistry.config().clock());
+        final QueueTaskRecorder recorder;
+        if (mode == QueueMetricsMode.LIGHTWEIGHT) {
+            QueueTaskStatistics statistics = new QueueTaskStatistics(meterRegistry.config().clock());
+            group.statistics.add(statistics);
+            recorder = new AccumulatingQueueTaskRecorder(index, meterRegistry, tag, statistics, sampler);
+        } else {
+            recorder = new TimerQueueTaskRecorder(index,
+                    meterRegistry,
+                    tag,
+                    group.taskCounter,
+                    group.waitTimeTimer,
+                    group.executionTimer,
+                    sampler);
         }
-        return WORKER;
+        return new MonitoredQueue(index,
+                dot(NETTY, QUEUE, SIZE),
+                meterRegistry,
+                tag,
+                recorder,
+                newMpscQueue(maxCapacity));
     }
 
+    private MonitoredQueue newTailTaskQueue(GroupMeters group, int maxCapacity) {
+        final int index = group.tailCounter.incrementAndGet();
+        final MeterRegistry meterRegistry = meterRegistryProvider.get();
+        final Tag tag = Tag.of(GROUP, group.name);
+        return new MonitoredQueue(index,
+                dot(NETTY, QUEUE, TAIL, SIZE),
+                meterRegistry,
+                tag,
+                new TailTaskRecorder(index, meterRegistry, tag),
+                newMpscQueue(maxCapacity));
+    }
+
+    private static Queue<Runnable> newMpscQueue(int maxCapacity) {
+        return maxCapacity == Integer.MAX_VALUE ? PlatformDependent.<Runnable>newMpscQueue() : PlatformDependent.<Runnable>newMpscQueue(maxCapacity);
+    }
+
+    private GroupMeters group(String name) {
+        return groups.computeIfAbsent(name, n -> new GroupMeters(n, mode, meterRegistryProvider.get()));
+    }
+
+    /**
+     * Maps an event loop group configuration name to the group tag. The server parent group
+     * keeps the {@code parent} tag, the default group shared by the server workers and the
+     * clients keeps the {@code worker} tag and any other named group is tagged with its name.
+     *
+     * @param groupName The name of the event loop group configuration
+     * @return The group tag value
+     */
+    static String groupTag(@Nullable String groupName) {
+        if (groupName == null || EventLoopGroupConfiguration.DEFAULT.equals(groupName)) {
+            return WORKER;
+        }
+        if (PARENT_GROUP_NAME.equals(groupName)) {
+            return PARENT;
+        }
+        return groupName;
+    }
+
+    /**
+     * Fallback for event loop groups created without their configuration.
+     *
+     * @return The group tag value
+     */
+    static String findOrigin() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> NETTY_HTTP_SERVER.equals(frame.getClassName()))
+                .map(StackWalker.StackFrame::getMethodName)
+                .filter(method -> "createParentEventLoopGroup".equals(method) || "createWorkerEventLoopGroup".equals(method))
+                .findFirst()
+                .map(method -> "createParentEventLoopGroup".equals(method) ? PARENT : WORKER)
+                .orElse(WORKER));
+    }
+
+    /**
+     * The meters shared by all the queues of an event loop group.
+     */
+    private static final class GroupMeters {
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger(-1);
+        private final AtomicInteger tailCounter = new AtomicInteger(-1);
+        private final List<QueueTaskStatistics> statistics = new CopyOnWriteArrayList<>();
+        private final Counter taskCounter;
+        private final Timer waitTimeTimer;
+        private final Timer executionTimer;
+
+        GroupMeters(String name, QueueMetricsMode mode, MeterRegistry meterRegistry) {
+            this.name = name;
+            if (mode == QueueMetricsMode.LIGHTWEIGHT) {
+                taskCounter = null;
+                waitTimeTimer = null;
+                executionTimer = null;
+                FunctionTimer.builder(dot(NETTY, QUEUE, GLOBAL, WAIT_TIME), statistics, QueueTaskStatistics::totalCount, QueueTaskStatistics::totalWaitTime, NANOSECONDS)
+                        .description("Global wait time spent in the " + name + " Queues.")
+                        .tag(GROUP, name)
+                        .register(meterRegistry);
+                FunctionTimer.builder(dot(NETTY, QUEUE, GLOBAL, EXECUTION_TIME), statistics, QueueTaskStatistics::totalCount, QueueTaskStatistics::totalExecutionTime, NANOSECONDS)
+                        .description("Global " + name + " runnable execution time.")
+                        .tag(GROUP, name)
+                        .register(meterRegistry);
+                FunctionCounter.builder(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT), statistics, QueueTaskStatistics::totalSubmittedCount)
+                        .description("The number of tasks submitted to the " + name + " Queues.")
+                        .tag(GROUP, name)
+                        .register(meterRegistry);
+                return;
+            }
+            waitTimeTimer = Timer.builder(dot(NETTY, QUEUE, GLOBAL, WAIT_TIME))
+                    .description("Global wait time spent in the " + name + " Queues.")
+                    .tag(GROUP, name)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            executionTimer = Timer.builder(dot(NETTY, QUEUE, GLOBAL, EXECUTION_TIME))
+                    .description("Global " + name + " runnable execution time.")
+                    .tag(GROUP, name)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            taskCounter = Counter.builder(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT))
+                    .description("The number of tasks submitted to the " + name + " Queues.")
+                    .tag(GROUP, name)
+                    .register(meterRegistry);
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.annotation.Internal;
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.netty.channel.EventLoopGroupConfiguration;
+import io.micronaut.http.netty.channel.EventLoopGroupFactory;
+import io.micronaut.http.netty.channel.IOUringAvailabilityCondition;
+import io.micronaut.http.netty.channel.IOUringEventLoopGroupFactory;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import io.netty.util.concurrent.DefaultEventExecutorChooserFactory;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import io.netty.util.concurrent.ThreadPerTaskExecutor;
+import io.netty.util.internal.SystemPropertyUtil;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS;
+import static io.micronaut.core.util.StringUtils.FALSE;
+
+/**
+ * Factory for Instrumented IOUringEventLoopGroup.
+ *
+ * @since 5.6.0
+ */
+@Singleton
+@Internal
+@Replaces(bean = IOUringEventLoopGroupFactory.class, named = EventLoopGroupFactory.NATIVE)
+@Named(EventLoopGroupFactory.NATIVE)
+@Requires(classes = IOUring.class, condition = IOUringAvailabilityCondition.class)
+@RequiresMetrics
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled", defaultValue = FALSE, notEquals = FALSE)
+final class InstrumentedIOUringEventLoopGroupFactory implements EventLoopGroupFactory {
+
+    /**
+     * Zero lets the event loops use the default submission queue size.
+     */
+    private static final int DEFAULT_RING_SIZE = 0;
+    private static final int IOSQE_ASYNC_THRESHOLD = SystemPropertyUtil.getInt("io.netty.iouring.iosqeAsyncThreshold", 25);
+
+    private final InstrumentedEventLoopTaskQueueFactory instrumentedEventLoopTaskQueueFactory;
+
+    /**
+     * @param factory InstrumentedEventLoopTaskQueueFactory
+     */
+    public InstrumentedIOUringEventLoopGroupFactory(InstrumentedEventLoopTaskQueueFactory factory) {
+        this.instrumentedEventLoopTaskQueueFactory = factory;
+    }
+
+    @Override
+    public EventLoopGroup createEventLoopGroup(int threads,
+                                               @Nullable Integer ioRatio) {
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, null);
+    }
+
+    @Override
+    public EventLoopGroup createEventLoopGroup(int threads,
+                                               ThreadFactory threadFactory,
+                                               @Nullable Integer ioRatio) {
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory));
+    }
+
+    @Override
+    public EventLoopGroup createEventLoopGroup(int threads,
+                                               Executor executor,
+                                               @Nullable Integer ioRatio) {
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, executor);
+    }
+
+    @Override
+    public EventLoopGroup createEventLoopGroup(EventLoopGroupConfiguration configuration,
+                                               ThreadFactory threadFactory) {
+        return newEventLoopGroup(configuration.getName(),
+                configuration.getNumThreads(),
+                new ThreadPerTaskExecutor(threadFactory));
+    }
+
+    @Override
+    public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+        return IOUringServerSocketChannel.class;
+    }
+
+    @NonNull
+    @Override
+    public Class<? extends SocketChannel> clientSocketChannelClass(@Nullable EventLoopGroupConfiguration configuration) {
+        return IOUringSocketChannel.class;
+    }
+
+    @Override
+    public boolean isNative() {
+        return true;
+    }
+
+    private EventLoopGroup newEventLoopGroup(@Nullable String groupName,
+                                             int threads,
+                                             @Nullable Executor executor) {
+        return instrumentedEventLoopTaskQueueFactory.instrument(groupName, (taskQueueFactory, tailTaskQueueFactory) -> new IOUringEventLoopGroup(threads, executor,
+                DefaultEventExecutorChooserFactory.INSTANCE,
+                DEFAULT_RING_SIZE,
+                IOSQE_ASYNC_THRESHOLD,
+                RejectedExecutionHandlers.reject(),
+                taskQueueFactory,
+                tailTaskQueueFactory));
+    }
+}
@@ -72,33 +72,30 @@ final class InstrumentedKQueueEventLoopGroupFactory implements EventLoopGroupFac
     @Override
     public EventLoopGroup createEventLoopGroup(int threads,
                                                @Nullable Integer ioRatio) {
-        return withIoRatio(new KQueueEventLoopGroup(threads, null,
-                DefaultEventExecutorChooserFactory.INSTANCE,
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory), ioRatio);
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, null, ioRatio);
     }
 
     @Override
     public EventLoopGroup createEventLoopGroup(int threads,
                                                ThreadFactory threadFactory,
                                                @Nullable Integer ioRatio) {
-        return withIoRatio(new KQueueEventLoopGroup(threads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory),
-                DefaultEventExecutorChooserFactory.INSTANCE,
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory), ioRatio);
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory), ioRatio);
     }
 
     @Override
     public EventLoopGroup createEventLoopGroup(int threads,
                                                Executor executor,
                                                @Nullable Integer ioRatio) {
-        return withIoRatio(new KQueueEventLoopGroup(threads, executor,
-                DefaultEventExecutorChooserFactory.INSTANCE,
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory), ioRatio);
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, executor, ioRatio);
+    }
+
+    @Override
+    public EventLoopGroup createEventLoopGroup(EventLoopGroupConfiguration configuration,
+                                               ThreadFactory threadFactory) {
+        return newEventLoopGroup(configuration.getName(),
+                configuration.getNumThreads(),
+                new ThreadPerTaskExecutor(threadFactory),
+                configuration.getIoRatio().orElse(null));
     }
 
     @Override
@@ -117,6 +114,18 @@ final class InstrumentedKQueueEventLoopGroupFactory implements EventLoopGroupFac
         return KQueueSocketChannel.class;
     }
 
+    private EventLoopGroup newEventLoopGroup(@Nullable String groupName,
+                                             int threads,
+                                             @Nullable Executor executor,
+                                             @Nullable Integer ioRatio) {
+        return instrumentedEventLoopTaskQueueFactory.instrument(groupName, (taskQueueFactory, tailTaskQueueFactory) -> withIoRatio(new KQueueEventLoopGroup(threads, executor,
+                DefaultEventExecutorChooserFactory.INSTANCE,
+                DefaultSelectStrategyFactory.INSTANCE,
+                RejectedExecutionHandlers.reject(),
+                taskQueueFactory,
+                tailTaskQueueFactory), ioRatio));
+    }
+
     private static KQueueEventLoopGroup withIoRatio(KQueueEventLoopGroup group, @Nullable Integer ioRatio) {
         if (ioRatio != null) {
             group.setIoRatio(ioRatio);
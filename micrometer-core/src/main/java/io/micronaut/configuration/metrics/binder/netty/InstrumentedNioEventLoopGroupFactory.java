@@ -67,35 +67,30 @@ final class InstrumentedNioEventLoopGroupFactory extends NioEventLoopGroupFactor
     @Override
     public EventLoopGroup createEventLoopGroup(int threads,
                                                @Nullable Integer ioRatio) {
-        return withIoRatio(new NioEventLoopGroup(threads, null, null,
-                SelectorProvider.provider(),
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory), ioRatio);
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, null, ioRatio);
     }
 
     @Override
     public EventLoopGroup createEventLoopGroup(int threads,
                                                ThreadFactory threadFactory,
                                                @Nullable Integer ioRatio) {
-        return withIoRatio(new NioEventLoopGroup(threads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory),
-                DefaultEventExecutorChooserFactory.INSTANCE,
-                SelectorProvider.provider(),
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory), ioRatio);
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory), ioRatio);
     }
 
     @Override
     public EventLoopGroup createEventLoopGroup(int threads,
                                                Executor executor,
                                                @Nullable Integer ioRatio) {
-        return withIoRatio(new NioEventLoopGroup(threads, executor,
-                DefaultEventExecutorChooserFactory.INSTANCE,
-                SelectorProvider.provider(),
-                DefaultSelectStrategyFactory.INSTANCE,
-                RejectedExecutionHandlers.reject(),
-                instrumentedEventLoopTaskQueueFactory), ioRatio);
+        return newEventLoopGroup(InstrumentedEventLoopTaskQueueFactory.findOrigin(), threads, executor, ioRatio);
+    }
+
+    @Override
+    public EventLoopGroup createEventLoopGroup(EventLoopGroupConfiguration configuration,
+                                               ThreadFactory threadFactory) {
+        return newEventLoopGroup(configuration.getName(),
+                configuration.getNumThreads(),
+                new ThreadPerTaskExecutor(threadFactory),
+                configuration.getIoRatio().orElse(null));
     }
 
     @Override
@@ -109,6 +104,19 @@ final class InstrumentedNioEventLoopGroupFactory extends NioEventLoopGroupFactor
         return NioSocketChannel.class;
     }
 
+    private EventLoopGroup newEventLoopGroup(@Nullable String groupName,
+                                             int threads,
+                                             @Nullable Executor executor,
+                                             @Nullable Integer ioRatio) {
+        return instrumentedEventLoopTaskQueueFactory.instrument(groupName, (taskQueueFactory, tailTaskQueueFactory) -> withIoRatio(new NioEventLoopGroup(threads, executor,
+                DefaultEventExecutorChooserFactory.INSTANCE,
+                SelectorProvider.provider(),
+                DefaultSelectStrategyFactory.INSTANCE,
+                RejectedExecutionHandlers.reject(),
+                taskQueueFactory,
+                tailTaskQueueFactory), ioRatio));
+    }
+
     private static NioEventLoopGroup withIoRatio(NioEventLoopGroup group,
                                                  @Nullable Integer ioRatio) {
         if (ioRatio != null) {
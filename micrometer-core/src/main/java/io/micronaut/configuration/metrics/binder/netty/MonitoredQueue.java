@@ -15,30 +15,27 @@
  */
 package io.micronaut.configuration.metrics.binder.netty;
 
-import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
-import io.micrometer.core.instrument.Timer;
 import io.micronaut.core.annotation.Internal;
+import io.micronaut.core.annotation.Nullable;
 
+import java.lang.management.ThreadMXBean;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
-import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EXECUTION_TIME;
-import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NUMBER;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.QUEUE;
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SIZE;
-import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WAIT_TIME;
-import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * An instrumented Queue.
@@ -49,49 +46,90 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 @Internal
 final class MonitoredQueue implements Queue<Runnable> {
 
+    private final int index;
     private final Queue<Runnable> delegate;
-    private final MeterRegistry meterRegistry;
-    private final Timer waitTimeTimer;
-    private final Timer executionTimer;
-    private final Timer globalWaitTimeTimer;
-    private final Timer globalExecutionTimeTimer;
-    private final Counter globalTaskCounter;
+    private final QueueTaskRecorder recorder;
+    private final Set<Runnable> excluded = ConcurrentHashMap.newKeySet();
+    private volatile Thread consumer;
+    private volatile TaskCpuTime taskCpuTime;
 
     /**
-     * @param index                    An index.
-     * @param meterRegistry            The meter registry.
-     * @param tag                      A Tag.
-     * @param globalTaskCounter        A counter.
-     * @param globalWaitTimeTimer      The global wait time timer.
-     * @param globalExecutionTimeTimer The global execution time timer.
-     * @param queue                    The Queue.
+     * @param index         An index.
+     * @param name          The name of the queue size gauge.
+     * @param meterRegistry The meter registry.
+     * @param tag           A Tag.
+     * @param recorder      The recorder of the submitted tasks.
+     * @param queue         The Queue.
      */
     MonitoredQueue(int index,
+                   String name,
                    MeterRegistry meterRegistry,
                    Tag tag,
-                   Counter globalTaskCounter,
-                   Timer globalWaitTimeTimer,
-                   Timer globalExecutionTimeTimer,
+                   QueueTaskRecorder recorder,
                    Queue<Runnable> queue) {
+        this.index = index;
         this.delegate = queue;
-        this.meterRegistry = meterRegistry;
-        this.globalExecutionTimeTimer = globalExecutionTimeTimer;
-        this.globalWaitTimeTimer = globalWaitTimeTimer;
-        this.globalTaskCounter = globalTaskCounter;
+        this.recorder = recorder;
         Tags tags = Tags.of(tag, Tag.of(QUEUE, SIZE))
                 .and(NUMBER, Integer.toString(index));
-        Gauge.builder(dot(NETTY, QUEUE, SIZE), delegate, Queue::size)
+        Gauge.builder(name, delegate, Queue::size)
                 .tags(tags)
                 .description("The approximate number of tasks that are queued for execution.")
                 .register(meterRegistry);
+    }
 
-        tags = Tags.of(tag, Tag.of(QUEUE, WAIT_TIME))
-                .and(NUMBER, Integer.toString(index));
-        waitTimeTimer = Timer.builder(dot(NETTY, QUEUE, WAIT_TIME)).description("Wait time spent in the Queue.").publishPercentileHistogram().tags(tags).register(meterRegistry);
+    /**
+     * @return The index of the queue within its event loop group.
+     */
+    int index() {
+        return index;
+    }
 
-        tags = Tags.of(tag, Tag.of(QUEUE, EXECUTION_TIME))
-                .and(NUMBER, Integer.toString(index));
-        executionTimer = Timer.builder(dot(NETTY, QUEUE, EXECUTION_TIME)).description("Runnable execution time.").publishPercentileHistogram().tags(tags).register(meterRegistry);
+    /**
+     * @return The recorder of the submitted tasks.
+     */
+    QueueTaskRecorder recorder() {
+        return recorder;
+    }
+
+    /**
+     * @return The event loop thread consuming the queue, or null when it did not run any task yet.
+     */
+    @Nullable
+    Thread consumer() {
+        return consumer;
+    }
+
+    /**
+     * Starts measuring the CPU time of the tasks timed by the recorder, from the next submitted task.
+     *
+     * @param threadMXBean The bean measuring the CPU time of the event loop thread
+     * @return The CPU time of the tasks
+     */
+    synchronized TaskCpuTime measureTaskCpuTime(ThreadMXBean threadMXBean) {
+        if (taskCpuTime == null) {
+            taskCpuTime = new TaskCpuTime(threadMXBean);
+        }
+        return taskCpuTime;
+    }
+
+    /**
+     * Excludes the next submission of a task from the metrics, for the tasks the metrics binders
+     * submit themselves.
+     *
+     * @param task The task to submit without recording it
+     */
+    void exclude(Runnable task) {
+        excluded.add(task);
+    }
+
+    /**
+     * Cancels the exclusion of a task whose submission was rejected, so that it is not retained.
+     *
+     * @param task The task that was not submitted
+     */
+    void include(Runnable task) {
+        excluded.remove(task);
     }
 
     @Override
@@ -101,14 +139,21 @@ final class MonitoredQueue implements Queue<Runnable> {
 
     @Override
     public boolean add(Runnable e) {
-        globalTaskCounter.increment();
-        return delegate.add(new TimedRunnable(meterRegistry, executionTimer, waitTimeTimer, globalExecutionTimeTimer, globalWaitTimeTimer, e));
+        return delegate.add(wrap(e));
     }
 
     @Override
     public boolean offer(Runnable e) {
-        globalTaskCounter.increment();
-        return delegate.offer(new TimedRunnable(meterRegistry, executionTimer, waitTimeTimer, globalExecutionTimeTimer, globalWaitTimeTimer, e));
+        return delegate.offer(wrap(e));
+    }
+
+    private Runnable wrap(Runnable task) {
+        if (!excluded.isEmpty() && excluded.remove(task)) {
+            return task;
+        }
+        Runnable wrapped = recorder.wrap(task);
+        TaskCpuTime cpuTime = taskCpuTime;
+        return cpuTime == null ? wrapped : cpuTime.wrap(task, wrapped);
     }
 
     @Override
@@ -133,7 +178,11 @@ final class MonitoredQueue implements Queue<Runnable> {
 
     @Override
     public Runnable poll() {
-        return delegate.poll();
+        if (consumer == null) {
+            consumer = Thread.currentThread();
+        }
+        Runnable task = delegate.poll();
+        return task == null ? null : recorder.polled(task);
     }
 
     @Override
@@ -225,45 +274,4 @@ final class MonitoredQueue implements Queue<Runnable> {
     public Stream<Runnable> parallelStream() {
         return delegate.parallelStream();
     }
-
-    /**
-     * Runnable Wrapper that register time spent in queue and execution time.
-     *
-     * @since 2.0
-     */
-    static final class TimedRunnable implements Runnable {
-        private final MeterRegistry registry;
-        private final Timer executionTimer;
-        private final Timer waitTimeTimer;
-        private final Timer globalWaitTimeTimer;
-        private final Timer globalExecutionTimeTimer;
-        private final Runnable delegate;
-        private final Timer.Sample idleSample;
-
-        TimedRunnable(MeterRegistry registry,
-                      Timer executionTimer,
-                      Timer waitTimeTimer,
-                      Timer globalExecutionTimeTimer,
-                      Timer globalWaitTimeTimer,
-                      Runnable delegate) {
-            this.registry = registry;
-            this.executionTimer = executionTimer;
-            this.waitTimeTimer = waitTimeTimer;
-            this.globalExecutionTimeTimer = globalExecutionTimeTimer;
-            this.globalWaitTimeTimer = globalWaitTimeTimer;
-            this.delegate = delegate;
-            this.idleSample = Timer.start(registry);
-        }
-
-        @Override
-        public void run() {
-            globalWaitTimeTimer.record(idleSample.stop(waitTimeTimer), NANOSECONDS);
-            final Timer.Sample executionSample = Timer.start(registry);
-            try {
-                delegate.run();
-            } finally {
-                globalExecutionTimeTimer.record(executionSample.stop(executionTimer), NANOSECONDS);
-            }
-        }
-    }
 }
@@ -25,6 +25,7 @@ final class NettyMetrics {
 
     static final String NETTY = "netty";
     static final String ALLOC = "alloc";
+    static final String ALLOCATOR = "allocator";
     static final String POOLED = "pooled";
     static final String UNPOOLED = "unpooled";
     static final String QUEUE = "queue";
@@ -42,6 +43,7 @@ final class NettyMetrics {
     static final String LOCAL = "local";
 
     static final String CACHE = "cache";
+    static final String MISS = "miss";
     static final String SIZE = "size";
     static final String SMALL = "small";
     static final String NORMAL = "normal";
@@ -76,9 +78,46 @@ final class NettyMetrics {
     static final String PARENT = "parent";
     static final String WORKER = "worker";
 
+    static final String EVENTLOOP = "eventloop";
+    static final String STALL = "stall";
+    static final String BUSY = "busy";
+    static final String UTILIZATION = "utilization";
+    static final String IO = "io";
+    static final String TASK = "task";
+    static final String PENDING = "pending";
+    static final String LATENCY = "latency";
+    static final String TAIL = "tail";
+    static final String SCHEDULED = "scheduled";
+    static final String LATENESS = "lateness";
+
+    static final String LISTENER = "listener";
+    static final String PROTOCOL = "protocol";
+    static final String HTTP1 = "http1";
+    static final String HTTP2 = "http2";
+    static final String HTTP3 = "http3";
+
+    static final String STREAM = "stream";
+    static final String CONCURRENCY = "concurrency";
+    static final String RST = "rst";
+    static final String GOAWAY = "goaway";
+    static final String FLOW_CONTROL = "flow.control";
+    static final String DIRECTION = "direction";
+    static final String SENT = "sent";
+    static final String RECEIVED = "received";
+
+    static final String UNWRITABLE = "unwritable";
+    static final String OUTBOUND = "outbound";
+
     static final String READ = "read";
     static final String WRITTEN = "written";
 
+    static final String LEAK = "leak";
+    static final String SITE = "site";
+    static final String RESOURCE = "resource";
+    static final String RECORD = "record";
+    static final String TRACED = "traced";
+    static final String UNTRACED = "untraced";
+
     private NettyMetrics() {
     }
 
@@ -16,23 +16,49 @@
 package io.micronaut.configuration.metrics.binder.netty;
 
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
 import io.micronaut.context.BeanProvider;
 import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
 import io.micronaut.context.event.BeanCreatedEvent;
 import io.micronaut.context.event.BeanCreatedEventListener;
 import io.micronaut.core.annotation.Internal;
 import io.micronaut.http.server.netty.NettyServerCustomizer;
+import io.micronaut.runtime.event.annotation.EventListener;
 import io.micronaut.runtime.server.EmbeddedServer;
+import io.micronaut.runtime.server.event.ServerStartupEvent;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.socket.DuplexChannel;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
 import jakarta.inject.Singleton;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static io.micronaut.configuration.metrics.binder.netty.ChannelMetricsHandler.CHANNEL_METRICS;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.HTTP1;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.HTTP2;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.HTTP3;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LISTENER;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.PROTOCOL;
 import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS;
 import static io.micronaut.core.util.StringUtils.FALSE;
 
 /**
  * Adds Netty's metrics handler to the pipeline.
+ * <p>
+ * The channel meters are tagged with the listener that accepted the connection and the
+ * negotiated protocol. Both are resolved once per connection and share a
+ * {@link ChannelMetricsHandler} per tag combination, so no lookup happens per message.
+ * A connection upgraded to h2c is handed over to the handler of the HTTP/2 protocol.
  *
  * @author croudet
  * @since 2.0
@@ -44,31 +70,120 @@ import static io.micronaut.core.util.StringUtils.FALSE;
 @Requires(classes = EmbeddedServer.class)
 final class NettyMetricsPipelineBinder implements BeanCreatedEventListener<NettyServerCustomizer.Registry> {
 
-    private final ChannelMetricsHandler metricsHandler;
+    private static final String UNKNOWN = "unknown";
+
+    private final BeanProvider<MeterRegistry> meterRegistryProvider;
+    private final boolean http2Enabled;
+    private final Map<ChannelTags, ChannelMetricsHandler> metricsHandlers = new ConcurrentHashMap<>();
+    private final Map<String, Http2StreamMetrics> http2Metrics = new ConcurrentHashMap<>();
+    private final UpgradeListener upgradeListener = new UpgradeListener();
 
     /**
      * Builds a NettyMetricsPipelineCustomizer that will add channel metrics.
      *
      * @param meterRegistryProvider The metrics registry provider.
+     * @param http2Enabled          Whether to record the HTTP/2 stream metrics.
      */
-    NettyMetricsPipelineBinder(BeanProvider<MeterRegistry> meterRegistryProvider) {
-        metricsHandler = new ChannelMetricsHandler(meterRegistryProvider);
+    NettyMetricsPipelineBinder(BeanProvider<MeterRegistry> meterRegistryProvider,
+                               @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.http2.enabled:false}") boolean http2Enabled) {
+        this.meterRegistryProvider = meterRegistryProvider;
+        this.http2Enabled = http2Enabled;
     }
 
     @Override
     public NettyServerCustomizer.Registry onCreated(BeanCreatedEvent<NettyServerCustomizer.Registry> event) {
         NettyServerCustomizer.Registry registry = event.getBean();
-        registry.register(new MetricsCustomizer(null, metricsHandler));
+        registry.register(new MetricsCustomizer(null, null, this));
         return registry;
     }
 
+    /**
+     * Creates the HTTP/1.1 channel meters of the server port, so they are published before
+     * the first connection.
+     *
+     * @param event The server startup event
+     */
+    @EventListener
+    void onStartup(ServerStartupEvent event) {
+        int port = event.getSource().getPort();
+        if (port > 0) {
+            metricsHandler(Integer.toString(port), HTTP1);
+        }
+    }
+
+    private ChannelMetricsHandler metricsHandler(String listener, String protocol) {
+        return metricsHandlers.computeIfAbsent(new ChannelTags(listener, protocol),
+                t -> new ChannelMetricsHandler(meterRegistryProvider, Tags.of(LISTENER, t.listener()).and(PROTOCOL, t.protocol())));
+    }
+
+    /**
+     * Adds the metrics handler of the current protocol of the connection, or replaces the handler
+     * of its previous protocol. Called on the event loop of the channel.
+     *
+     * @param channel  The connection
+     * @param listener The listener tag of the connection
+     */
+    private void bind(Channel channel, String listener) {
+        ChannelPipeline pipeline = channel.pipeline();
+        String protocol = protocol(channel);
+        ChannelMetricsHandler handler = metricsHandler(listener, protocol);
+        ChannelHandler current = pipeline.get(CHANNEL_METRICS);
+        if (current == handler) {
+            return;
+        }
+        if (current instanceof ChannelMetricsHandler previous) {
+            previous.handOver(channel, handler);
+            pipeline.replace(CHANNEL_METRICS, CHANNEL_METRICS, handler);
+        } else {
+            pipeline.addFirst(CHANNEL_METRICS, handler);
+            ChannelHandlerContext upgrade = pipeline.context(HttpServerUpgradeHandler.class);
+            if (upgrade != null) {
+                pipeline.addAfter(upgrade.name(), UpgradeListener.NAME, upgradeListener);
+            }
+        }
+        if (HTTP2.equals(protocol)) {
+            bindHttp2(listener, channel);
+        }
+    }
+
+    private void bindHttp2(String listener, Channel channel) {
+        if (!http2Enabled) {
+            return;
+        }
+        Http2ConnectionHandler handler = channel.pipeline().get(Http2ConnectionHandler.class);
+        if (handler != null) {
+            http2Metrics.computeIfAbsent(listener, l -> new Http2StreamMetrics(meterRegistryProvider.get(), Tags.of(LISTENER, l)))
+                    .bind(handler);
+        }
+    }
+
+    private static String listener(Channel channel) {
+        SocketAddress address = channel.localAddress();
+        if (address instanceof InetSocketAddress inetSocketAddress) {
+            return Integer.toString(inetSocketAddress.getPort());
+        }
+        return address == null ? UNKNOWN : address.toString();
+    }
+
+    private static String protocol(Channel channel) {
+        ChannelPipeline pipeline = channel.pipeline();
+        if (pipeline.get(Http2ConnectionHandler.class) != null) {
+            return HTTP2;
+        }
+        return channel instanceof DuplexChannel ? HTTP1 : HTTP3;
+    }
+
+    private record ChannelTags(String listener, String protocol) {
+    }
+
     private record MetricsCustomizer(Channel channel,
-                                     ChannelMetricsHandler metricsHandler) implements NettyServerCustomizer {
+                                     String listener,
+                                     NettyMetricsPipelineBinder binder) implements NettyServerCustomizer {
 
         @Override
         public NettyServerCustomizer specializeForChannel(Channel channel, ChannelRole role) {
             if (role == ChannelRole.CONNECTION) {
-                return new MetricsCustomizer(channel, metricsHandler);
+                return new MetricsCustomizer(channel, listener(channel), binder);
             }
             return this;
         }
@@ -76,8 +191,27 @@ final class NettyMetricsPipelineBinder implements BeanCreatedEventListener<Netty
         @Override
         public void onStreamPipelineBuilt() {
             if (channel != null) {
-                channel.pipeline().addFirst(CHANNEL_METRICS, metricsHandler);
+                binder.bind(channel, listener);
+            }
+        }
+    }
+
+    /**
+     * Placed after the h2c upgrade handler, so that it is notified once the connection is upgraded.
+     * It only handles the user events, Netty skips it for the other events.
+     */
+    @ChannelHandler.Sharable
+    private final class UpgradeListener extends ChannelInboundHandlerAdapter {
+
+        private static final String NAME = "channel-metrics-upgrade";
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent) {
+                ctx.pipeline().remove(this);
+                bind(ctx.channel(), listener(ctx.channel()));
             }
+            super.userEventTriggered(ctx, evt);
         }
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micronaut.core.annotation.Internal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the metrics of the tasks submitted to a {@link MonitoredQueue}.
+ *
+ * @since 5.6.0
+ */
+@Internal
+interface QueueTaskRecorder {
+
+    /**
+     * Called for every task offered to the queue.
+     *
+     * @param task The submitted task
+     * @return The task to enqueue, possibly wrapped to record its wait and execution time
+     */
+    Runnable wrap(Runnable task);
+
+    /**
+     * Called for every task polled from the queue by the event loop, for the recorders that keep
+     * the submitted instances in the queue so that they can still be removed.
+     *
+     * @param task The polled task
+     * @return The task to run, possibly wrapped to record its execution time
+     */
+    default Runnable polled(Runnable task) {
+        return task;
+    }
+
+    /**
+     * @param unit The time unit.
+     * @return The maximum wait time of the timed tasks over the current step.
+     */
+    double waitTimeMax(TimeUnit unit);
+}
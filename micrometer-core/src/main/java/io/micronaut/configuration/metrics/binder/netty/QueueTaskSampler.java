@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Clock;
+import io.micronaut.core.annotation.Internal;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which of the tasks submitted to a {@link MonitoredQueue} have their wait
+ * and execution time measured. Tasks are always counted.
+ *
+ * @since 5.6.0
+ */
+@Internal
+@FunctionalInterface
+interface QueueTaskSampler {
+
+    /**
+     * Samples every task.
+     */
+    QueueTaskSampler ALWAYS = () -> true;
+
+    /**
+     * Called by the threads submitting tasks.
+     *
+     * @return Whether the submitted task should be timed.
+     */
+    boolean sample();
+
+    /**
+     * @param rate     Time one task out of {@code rate} on average.
+     * @param interval Time at most one task per interval, takes precedence over the rate when positive.
+     * @param clock    The clock of the meter registry.
+     * @return A sampler for one queue.
+     */
+    static QueueTaskSampler create(int rate, Duration interval, Clock clock) {
+        if (!interval.isZero() && !interval.isNegative()) {
+            return new IntervalSampler(interval.toNanos(), clock);
+        }
+        if (rate > 1) {
+            return () -> ThreadLocalRandom.current().nextInt(rate) == 0;
+        }
+        return ALWAYS;
+    }
+
+    /**
+     * Times the first task submitted after each interval elapsed.
+     */
+    final class IntervalSampler implements QueueTaskSampler {
+        private final long intervalNanos;
+        private final Clock clock;
+        private final AtomicLong nextSample;
+
+        IntervalSampler(long intervalNanos, Clock clock) {
+            this.intervalNanos = intervalNanos;
+            this.clock = clock;
+            this.nextSample = new AtomicLong(clock.monotonicTime());
+        }
+
+        @Override
+        public boolean sample() {
+            long next = nextSample.get();
+            long now = clock.monotonicTime();
+            return now - next >= 0 && nextSample.compareAndSet(next, now + intervalNanos);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.TimeWindowMax;
+import io.micronaut.core.annotation.Internal;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Lock-free task statistics of a single event loop queue.
+ * <p>
+ * Only the event loop thread consuming the queue writes the timing statistics, so the
+ * accumulators are published with ordered stores instead of atomic read-modify-write
+ * operations. Meters read them at publication time. Submitted tasks are counted by the
+ * producing threads.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class QueueTaskStatistics {
+
+    private static final AtomicLongFieldUpdater<QueueTaskStatistics> COUNT =
+            AtomicLongFieldUpdater.newUpdater(QueueTaskStatistics.class, "count");
+    private static final AtomicLongFieldUpdater<QueueTaskStatistics> WAIT_TIME =
+            AtomicLongFieldUpdater.newUpdater(QueueTaskStatistics.class, "waitTime");
+    private static final AtomicLongFieldUpdater<QueueTaskStatistics> EXECUTION_TIME =
+            AtomicLongFieldUpdater.newUpdater(QueueTaskStatistics.class, "executionTime");
+
+    private final Clock clock;
+    private final TimeWindowMax waitTimeMax;
+    private final TimeWindowMax executionTimeMax;
+    private final LongAdder submitted = new LongAdder();
+
+    private volatile long count;
+    private volatile long waitTime;
+    private volatile long executionTime;
+
+    /**
+     * @param clock The clock of the meter registry.
+     */
+    QueueTaskStatistics(Clock clock) {
+        this.clock = clock;
+        this.waitTimeMax = new TimeWindowMax(clock, DistributionStatisticConfig.DEFAULT);
+        this.executionTimeMax = new TimeWindowMax(clock, DistributionStatisticConfig.DEFAULT);
+    }
+
+    /**
+     * @return The clock used to time the tasks.
+     */
+    Clock clock() {
+        return clock;
+    }
+
+    /**
+     * Counts a task submitted to the queue, whether it is timed or not.
+     */
+    void submitted() {
+        submitted.increment();
+    }
+
+    /**
+     * @return The number of tasks submitted to the queue.
+     */
+    long submittedCount() {
+        return submitted.sum();
+    }
+
+    /**
+     * Records a task. Must only be called by the thread consuming the queue.
+     *
+     * @param waitNanos      The time the task spent in the queue.
+     * @param executionNanos The time spent running the task.
+     */
+    void record(long waitNanos, long executionNanos) {
+        COUNT.lazySet(this, count + 1);
+        WAIT_TIME.lazySet(this, waitTime + waitNanos);
+        EXECUTION_TIME.lazySet(this, executionTime + executionNanos);
+        waitTimeMax.record(waitNanos, NANOSECONDS);
+        executionTimeMax.record(executionNanos, NANOSECONDS);
+    }
+
+    /**
+     * @return The number of timed tasks.
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * @param unit The time unit.
+     * @return The total wait time of the recorded tasks.
+     */
+    double waitTime(TimeUnit unit) {
+        return (double) waitTime / unit.toNanos(1);
+    }
+
+    /**
+     * @param unit The time unit.
+     * @return The total execution time of the recorded tasks.
+     */
+    double executionTime(TimeUnit unit) {
+        return (double) executionTime / unit.toNanos(1);
+    }
+
+    /**
+     * @param unit The time unit.
+     * @return The maximum wait time over the current step.
+     */
+    double waitTimeMax(TimeUnit unit) {
+        return waitTimeMax.poll(unit);
+    }
+
+    /**
+     * @param unit The time unit.
+     * @return The maximum execution time over the current step.
+     */
+    double executionTimeMax(TimeUnit unit) {
+        return executionTimeMax.poll(unit);
+    }
+
+    /**
+     * @param statistics The statistics of several queues.
+     * @return The number of tasks submitted to all the queues.
+     */
+    static long totalSubmittedCount(Collection<QueueTaskStatistics> statistics) {
+        long count = 0;
+        for (QueueTaskStatistics s : statistics) {
+            count += s.submittedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @param statistics The statistics of several queues.
+     * @return The number of tasks timed by all the queues.
+     */
+    static long totalCount(Collection<QueueTaskStatistics> statistics) {
+        long count = 0;
+        for (QueueTaskStatistics s : statistics) {
+            count += s.count();
+        }
+        return count;
+    }
+
+    /**
+     * @param statistics The statistics of several queues.
+     * @return The wait time recorded by all the queues, in nanoseconds.
+     */
+    static double totalWaitTime(Collection<QueueTaskStatistics> statistics) {
+        double total = 0;
+        for (QueueTaskStatistics s : statistics) {
+            total += s.waitTime(NANOSECONDS);
+        }
+        return total;
+    }
+
+    /**
+     * @param statistics The statistics of several queues.
+     * @return The execution time recorded by all the queues, in nanoseconds.
+     */
+    static double totalExecutionTime(Collection<QueueTaskStatistics> statistics) {
+        double total = 0;
+        for (QueueTaskStatistics s : statistics) {
+            total += s.executionTime(NANOSECONDS);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.annotation.Internal;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+import io.netty.util.internal.PlatformDependent;
+import jakarta.annotation.PreDestroy;
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.DIRECT;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LEAK;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MAX;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MEMORY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.RECORD;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.RESOURCE;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SITE;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TRACED;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.UNTRACED;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.USED;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS;
+import static io.micronaut.core.util.StringUtils.FALSE;
+
+/**
+ * Counts the resource leak sites reported by Netty's {@link ResourceLeakDetector} and exposes the
+ * direct memory used by Netty.
+ * <p>
+ * The binder installs a {@link ResourceLeakDetectorFactory} whose detectors count the leaks
+ * they report, tagged with the leaked resource type and whether access records were traced.
+ * A detector reports the leaks with the same access records, i.e. leaked at the same site,
+ * only once, so the counter is the number of distinct leak sites rather than of leaked resources.
+ * Leaks are detected at the configured {@code io.netty.leakDetection.level}, the default
+ * {@code SIMPLE} level samples a small fraction of the allocations.
+ * <p>
+ * The detectors Netty creates before the binder keep the previous factory and are not counted.
+ * All the {@link ByteBuf}s share a detector created when the first buffer of the JVM is allocated,
+ * so their leaks are only counted when the binder is created before any buffer is allocated.
+ * The binder does not allocate a buffer itself to find out, see {@link #byteBufLeaksCounted()}.
+ *
+ * @since 5.6.0
+ */
+@RequiresMetrics
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.leaks.enabled", defaultValue = FALSE, notEquals = FALSE)
+@Requires(classes = {ResourceLeakDetector.class, ByteBuf.class})
+@Context
+@Internal
+final class ResourceLeakMetricsBinder {
+
+    private final ResourceLeakDetectorFactory previousFactory;
+    private final LeakCounter leakCounter;
+    private final MeteredResourceLeakDetectorFactory factory;
+
+    /**
+     * @param meterRegistryProvider The metric registry provider.
+     */
+    public ResourceLeakMetricsBinder(BeanProvider<MeterRegistry> meterRegistryProvider) {
+        MeterRegistry meterRegistry = meterRegistryProvider.get();
+        Gauge.builder(dot(NETTY, MEMORY, DIRECT, USED), PlatformDependent::usedDirectMemory)
+                .description("The direct memory used by Netty in bytes, -1 when Netty does not track it.")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder(dot(NETTY, MEMORY, DIRECT, MAX), PlatformDependent::maxDirectMemory)
+                .description("The maximum direct memory Netty may use in bytes.")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        this.leakCounter = new LeakCounter(meterRegistryProvider);
+        this.previousFactory = ResourceLeakDetectorFactory.instance();
+        this.factory = new MeteredResourceLeakDetectorFactory(leakCounter);
+        ResourceLeakDetectorFactory.setResourceLeakDetectorFactory(factory);
+    }
+
+    /**
+     * @return Whether the leaks of the {@link ByteBuf}s are counted, false until the first buffer is allocated
+     */
+    boolean byteBufLeaksCounted() {
+        return factory.byteBufDetectorCreated;
+    }
+
+    /**
+     * Installs the factory that was installed before the binder again, for the detectors created
+     * afterwards. The detectors created by the binder, including the detector of the {@link ByteBuf}s,
+     * cannot be replaced and stay in use for the lifetime of the JVM: they stop counting and release
+     * the registry, but keep reporting the leaks like Netty's detectors.
+     */
+    @PreDestroy
+    void close() {
+        leakCounter.meterRegistryProvider = null;
+        ResourceLeakDetectorFactory.setResourceLeakDetectorFactory(previousFactory);
+    }
+
+    /**
+     * Counts the leaks reported by the detectors while the binder is open.
+     */
+    private static final class LeakCounter {
+
+        private volatile BeanProvider<MeterRegistry> meterRegistryProvider;
+
+        LeakCounter(BeanProvider<MeterRegistry> meterRegistryProvider) {
+            this.meterRegistryProvider = meterRegistryProvider;
+        }
+
+        boolean isOpen() {
+            return meterRegistryProvider != null;
+        }
+
+        void leaked(String resourceType, boolean traced) {
+            BeanProvider<MeterRegistry> provider = meterRegistryProvider;
+            if (provider == null) {
+                return;
+            }
+            Counter.builder(dot(NETTY, LEAK, SITE))
+                    .description("The number of distinct resource leak sites reported by Netty's leak detector.")
+                    .tags(Tags.of(RESOURCE, resourceType).and(RECORD, traced ? TRACED : UNTRACED))
+                    .register(provider.get())
+                    .increment();
+        }
+    }
+
+    /**
+     * Creates the detectors counting the leaks they report.
+     */
+    private static final class MeteredResourceLeakDetectorFactory extends ResourceLeakDetectorFactory {
+
+        private final LeakCounter leakCounter;
+        private volatile boolean byteBufDetectorCreated;
+
+        MeteredResourceLeakDetectorFactory(LeakCounter leakCounter) {
+            this.leakCounter = leakCounter;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation") // abstract in ResourceLeakDetectorFactory, so it has to be implemented
+        public <T> ResourceLeakDetector<T> newResourceLeakDetector(Class<T> resource, int samplingInterval, long maxActive) {
+            if (resource == ByteBuf.class) {
+                byteBufDetectorCreated = true;
+            }
+            return new MeteredResourceLeakDetector<>(resource, samplingInterval, leakCounter);
+        }
+    }
+
+    /**
+     * A detector counting the leaks it reports, in addition to logging them.
+     *
+     * @param <T> The resource type.
+     */
+    private static final class MeteredResourceLeakDetector<T> extends ResourceLeakDetector<T> {
+
+        private final LeakCounter leakCounter;
+
+        MeteredResourceLeakDetector(Class<T> resource, int samplingInterval, LeakCounter leakCounter) {
+            super(resource, samplingInterval);
+            this.leakCounter = leakCounter;
+        }
+
+        @Override
+        protected boolean needReport() {
+            // report leaks even when the error level of Netty's logger is disabled
+            return leakCounter.isOpen() || super.needReport();
+        }
+
+        @Override
+        protected void reportTracedLeak(String resourceType, String records) {
+            leakCounter.leaked(resourceType, true);
+            super.reportTracedLeak(resourceType, records);
+        }
+
+        @Override
+        protected void reportUntracedLeak(String resourceType) {
+            leakCounter.leaked(resourceType, false);
+            super.reportUntracedLeak(resourceType);
+        }
+    }
+}
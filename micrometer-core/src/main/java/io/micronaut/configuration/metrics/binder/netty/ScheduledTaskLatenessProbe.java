@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Internal;
+import io.netty.channel.EventLoop;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EVENTLOOP;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.GROUP;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LATENESS;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NUMBER;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SCHEDULED;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS;
+import static io.micronaut.core.util.StringUtils.FALSE;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Measures how late the scheduled tasks of the instrumented event loops run.
+ * <p>
+ * Netty keeps the scheduled tasks, such as timeouts and idle state checks, in a priority queue
+ * that cannot be replaced and whose deadlines are not exposed. Each event loop therefore runs a
+ * probe task rescheduling itself at a fixed delay, and records the difference between the time
+ * it actually ran and the time it was planned to run, which is the lateness any scheduled task
+ * due at that time suffered. The probe tasks are not recorded in the queue metrics.
+ *
+ * @since 5.6.0
+ */
+@Singleton
+@RequiresMetrics
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled", defaultValue = FALSE, notEquals = FALSE)
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.lateness.enabled", defaultValue = FALSE, notEquals = FALSE)
+@Internal
+final class ScheduledTaskLatenessProbe implements InstrumentedEventLoopGroupListener {
+
+    private final BeanProvider<MeterRegistry> meterRegistryProvider;
+    private final long intervalNanos;
+    private volatile boolean closed;
+
+    /**
+     * @param meterRegistryProvider the metric registry provider
+     * @param interval              the delay the probe task is scheduled with
+     */
+    public ScheduledTaskLatenessProbe(BeanProvider<MeterRegistry> meterRegistryProvider,
+                                      @Value("${" + MICRONAUT_METRICS_BINDERS + ".netty.lateness.interval:500ms}") Duration interval) {
+        this.meterRegistryProvider = meterRegistryProvider;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    @Override
+    public void onCreated(List<InstrumentedEventLoop> eventLoops) {
+        MeterRegistry meterRegistry = meterRegistryProvider.get();
+        for (InstrumentedEventLoop eventLoop : eventLoops) {
+            new Probe(eventLoop, meterRegistry).start();
+        }
+    }
+
+    /**
+     * Stops rescheduling the probes.
+     */
+    @PreDestroy
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * The probe of an event loop, only accessed by the event loop once scheduled.
+     */
+    private final class Probe implements Runnable {
+
+        private final EventLoop eventLoop;
+        private final MonitoredQueue queue;
+        private final Clock clock;
+        private final Timer latenessTimer;
+        private final Runnable starter = this::schedule;
+        private long plannedAt;
+
+        Probe(InstrumentedEventLoop instrumented, MeterRegistry meterRegistry) {
+            this.eventLoop = instrumented.eventLoop();
+            this.queue = instrumented.queue();
+            this.clock = meterRegistry.config().clock();
+            this.latenessTimer = Timer.builder(dot(NETTY, EVENTLOOP, SCHEDULED, LATENESS))
+                    .description("The time scheduled tasks ran after their planned time.")
+                    .tags(Tags.of(GROUP, instrumented.group()).and(NUMBER, Integer.toString(instrumented.index())))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        /**
+         * Schedules the first probe from the event loop, so that it is excluded from the queue
+         * metrics before the event loop can move it to its task queue.
+         */
+        void start() {
+            queue.exclude(starter);
+            try {
+                eventLoop.execute(starter);
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down
+                queue.include(starter);
+            }
+        }
+
+        /**
+         * Runs on the event loop.
+         */
+        void schedule() {
+            if (closed || eventLoop.isShuttingDown()) {
+                return;
+            }
+            plannedAt = clock.monotonicTime() + intervalNanos;
+            try {
+                // the scheduled task is moved to the task queue of the event loop once due
+                if (eventLoop.schedule(this, intervalNanos, NANOSECONDS) instanceof Runnable task) {
+                    queue.exclude(task);
+                }
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down
+            }
+        }
+
+        @Override
+        public void run() {
+            latenessTimer.record(Math.max(0, clock.monotonicTime() - plannedAt), NANOSECONDS);
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.core.annotation.Internal;
+import io.micronaut.http.server.netty.NettyServerCustomizer;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import jakarta.inject.Singleton;
+
+import java.net.InetSocketAddress;
+
+import static io.micronaut.configuration.metrics.binder.netty.ByteBufAllocatorMetricsBinder.SERVER_ALLOCATOR;
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS;
+import static io.micronaut.core.util.StringUtils.FALSE;
+
+/**
+ * Meters the allocators used by the server channels.
+ *
+ * @since 5.6.0
+ */
+@Singleton
+@Internal
+@RequiresMetrics
+@Requires(property = MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.enabled", defaultValue = FALSE, notEquals = FALSE)
+@Requires(classes = {ByteBufAllocator.class, NettyServerCustomizer.class})
+final class ServerByteBufAllocatorBinder implements BeanCreatedEventListener<NettyServerCustomizer.Registry> {
+
+    private final ByteBufAllocatorMetricsBinder allocatorMetricsBinder;
+
+    /**
+     * @param allocatorMetricsBinder The allocator metrics binder.
+     */
+    ServerByteBufAllocatorBinder(ByteBufAllocatorMetricsBinder allocatorMetricsBinder) {
+        this.allocatorMetricsBinder = allocatorMetricsBinder;
+    }
+
+    @Override
+    public NettyServerCustomizer.Registry onCreated(BeanCreatedEvent<NettyServerCustomizer.Registry> event) {
+        NettyServerCustomizer.Registry registry = event.getBean();
+        registry.register(new AllocatorCustomizer(allocatorMetricsBinder));
+        return registry;
+    }
+
+    private record AllocatorCustomizer(ByteBufAllocatorMetricsBinder allocatorMetricsBinder) implements NettyServerCustomizer {
+
+        @Override
+        public NettyServerCustomizer specializeForChannel(Channel channel, ChannelRole role) {
+            if (role == ChannelRole.CONNECTION) {
+                String name = channel.localAddress() instanceof InetSocketAddress address
+                        ? SERVER_ALLOCATOR + '-' + address.getPort()
+                        : SERVER_ALLOCATOR;
+                allocatorMetricsBinder.bind(channel.alloc(), name);
+            }
+            return this;
+        }
+    }
+}
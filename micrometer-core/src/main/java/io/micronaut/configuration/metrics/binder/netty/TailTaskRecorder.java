@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.core.annotation.Internal;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.COUNT;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ELEMENT;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EXECUTION_TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NUMBER;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.QUEUE;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TAIL;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+
+/**
+ * Records the tasks of a tail task queue, run by the event loop after each iteration.
+ * <p>
+ * Tail tasks are seldom submitted, so every task is counted and timed. The tasks are queued
+ * unchanged and only timed once they are polled, since they can be removed before they run.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class TailTaskRecorder implements QueueTaskRecorder {
+
+    private final Counter taskCounter;
+    private final Timer executionTimer;
+
+    /**
+     * @param index         An index.
+     * @param meterRegistry The meter registry.
+     * @param tag           A Tag.
+     */
+    TailTaskRecorder(int index, MeterRegistry meterRegistry, Tag tag) {
+        Tags tags = Tags.of(tag).and(NUMBER, Integer.toString(index));
+        taskCounter = Counter.builder(dot(NETTY, QUEUE, TAIL, ELEMENT, COUNT))
+                .description("The number of tasks submitted to the tail task queue.")
+                .tags(tags)
+                .register(meterRegistry);
+        executionTimer = Timer.builder(dot(NETTY, QUEUE, TAIL, EXECUTION_TIME))
+                .description("Tail task execution time.")
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Runnable wrap(Runnable task) {
+        taskCounter.increment();
+        // queue the task itself, so that SingleThreadEventLoop#removeAfterEventLoopIterationTask finds it
+        return task;
+    }
+
+    @Override
+    public Runnable polled(Runnable task) {
+        return executionTimer.wrap(task);
+    }
+
+    @Override
+    public double waitTimeMax(TimeUnit unit) {
+        return 0;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micronaut.core.annotation.Internal;
+
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CPU time spent running the tasks of a {@link MonitoredQueue}.
+ * <p>
+ * Only the tasks timed by the {@link QueueTaskRecorder} of the queue are measured, and their
+ * CPU time is extrapolated to the other submitted tasks. Only the event loop thread consuming
+ * the queue writes the accumulators, so they are published with ordered stores.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class TaskCpuTime {
+
+    private static final AtomicLongFieldUpdater<TaskCpuTime> COUNT =
+            AtomicLongFieldUpdater.newUpdater(TaskCpuTime.class, "count");
+    private static final AtomicLongFieldUpdater<TaskCpuTime> CPU_TIME =
+            AtomicLongFieldUpdater.newUpdater(TaskCpuTime.class, "cpuTime");
+
+    private final ThreadMXBean threadMXBean;
+    private final LongAdder submitted = new LongAdder();
+
+    private volatile long count;
+    private volatile long cpuTime;
+
+    /**
+     * @param threadMXBean The bean measuring the CPU time of the event loop thread.
+     */
+    TaskCpuTime(ThreadMXBean threadMXBean) {
+        this.threadMXBean = threadMXBean;
+    }
+
+    /**
+     * Called for every task offered to the queue.
+     *
+     * @param task    The submitted task
+     * @param wrapped The task returned by the recorder, which is measured when it differs from the task
+     * @return The task to enqueue
+     */
+    Runnable wrap(Runnable task, Runnable wrapped) {
+        submitted.increment();
+        return wrapped == task ? task : new CpuTimedRunnable(wrapped);
+    }
+
+    /**
+     * @param unit The time unit.
+     * @return The estimated CPU time spent running all the submitted tasks.
+     */
+    double estimated(TimeUnit unit) {
+        long timedCount = count;
+        if (timedCount == 0) {
+            return 0;
+        }
+        double timed = (double) cpuTime / unit.toNanos(1);
+        long submittedCount = submitted.sum();
+        return timedCount >= submittedCount ? timed : timed * submittedCount / timedCount;
+    }
+
+    /**
+     * Runnable wrapper that measures the CPU time of the event loop thread while the task runs.
+     */
+    private final class CpuTimedRunnable implements Runnable {
+        private final Runnable delegate;
+
+        CpuTimedRunnable(Runnable delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            final long start = threadMXBean.getCurrentThreadCpuTime();
+            try {
+                delegate.run();
+            } finally {
+                long end = threadMXBean.getCurrentThreadCpuTime();
+                if (start >= 0 && end >= start) {
+                    COUNT.lazySet(TaskCpuTime.this, count + 1);
+                    CPU_TIME.lazySet(TaskCpuTime.this, cpuTime + end - start);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.binder.netty;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.core.annotation.Internal;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EXECUTION_TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NUMBER;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.QUEUE;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WAIT_TIME;
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Records every task into per queue and global {@link Timer}s with percentile histograms.
+ *
+ * @author croudet
+ * @since 5.6.0
+ */
+@Internal
+final class TimerQueueTaskRecorder implements QueueTaskRecorder {
+
+    private final MeterRegistry meterRegistry;
+    private final Timer waitTimeTimer;
+    private final Timer executionTimer;
+    private final Timer globalWaitTimeTimer;
+    private final Timer globalExecutionTimeTimer;
+    private final Counter globalTaskCounter;
+    private final QueueTaskSampler sampler;
+
+    /**
+     * @param index                    An index.
+     * @param meterRegistry            The meter registry.
+     * @param tag                      A Tag.
+     * @param globalTaskCounter        A counter.
+     * @param globalWaitTimeTimer      The global wait time timer.
+     * @param globalExecutionTimeTimer The global execution time timer.
+     * @param sampler                  Selects the tasks to time.
+     */
+    TimerQueueTaskRecorder(int index,
+                           MeterRegistry meterRegistry,
+                           Tag tag,
+                           Counter globalTaskCounter,
+                           Timer globalWaitTimeTimer,
+                           Timer globalExecutionTimeTimer,
+                           QueueTaskSampler sampler) {
+        this.meterRegistry = meterRegistry;
+        this.sampler = sampler;
+        this.globalExecutionTimeTimer = globalExecutionTimeTimer;
+        this.globalWaitTimeTimer = globalWaitTimeTimer;
+        this.globalTaskCounter = globalTaskCounter;
+
+        Tags tags = Tags.of(tag, Tag.of(QUEUE, WAIT_TIME))
+                .and(NUMBER, Integer.toString(index));
+        waitTimeTimer = Timer.builder(dot(NETTY, QUEUE, WAIT_TIME)).description("Wait time spent in the Queue.").publishPercentileHistogram().tags(tags).register(meterRegistry);
+
+        tags = Tags.of(tag, Tag.of(QUEUE, EXECUTION_TIME))
+                .and(NUMBER, Integer.toString(index));
+        executionTimer = Timer.builder(dot(NETTY, QUEUE, EXECUTION_TIME)).description("Runnable execution time.").publishPercentileHistogram().tags(tags).register(meterRegistry);
+    }
+
+    @Override
+    public Runnable wrap(Runnable task) {
+        globalTaskCounter.increment();
+        if (!sampler.sample()) {
+            return task;
+        }
+        return new TimedRunnable(meterRegistry, executionTimer, waitTimeTimer, globalExecutionTimeTimer, globalWaitTimeTimer, task);
+    }
+
+    @Override
+    public double waitTimeMax(TimeUnit unit) {
+        return waitTimeTimer.max(unit);
+    }
+
+    /**
+     * Runnable Wrapper that register time spent in queue and execution time.
+     *
+     * @since 2.0
+     */
+    static final class TimedRunnable implements Runnable {
+        private final MeterRegistry registry;
+        private final Timer executionTimer;
+        private final Timer waitTimeTimer;
+        private final Timer globalWaitTimeTimer;
+        private final Timer globalExecutionTimeTimer;
+        private final Runnable delegate;
+        private final Timer.Sample idleSample;
+
+        TimedRunnable(MeterRegistry registry,
+                      Timer executionTimer,
+                      Timer waitTimeTimer,
+                      Timer globalExecutionTimeTimer,
+                      Timer globalWaitTimeTimer,
+                      Runnable delegate) {
+            this.registry = registry;
+            this.executionTimer = executionTimer;
+            this.waitTimeTimer = waitTimeTimer;
+            this.globalExecutionTimeTimer = globalExecutionTimeTimer;
+            this.globalWaitTimeTimer = globalWaitTimeTimer;
+            this.delegate = delegate;
+            this.idleSample = Timer.start(registry);
+        }
+
+        @Override
+        public void run() {
+            globalWaitTimeTimer.record(idleSample.stop(waitTimeTimer), NANOSECONDS);
+            final Timer.Sample executionSample = Timer.start(registry);
+            try {
+                delegate.run();
+            } finally {
+                globalExecutionTimeTimer.record(executionSample.stop(executionTimer), NANOSECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.management.endpoint;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micronaut.core.annotation.Internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The meters of a registry by name, kept up to date by the meter added and removed listeners
+ * of the registry, so that the lookups do not scan all the meters.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class MeterNameIndex {
+
+    private final Map<String, Set<Meter>> meters = new ConcurrentHashMap<>();
+
+    /**
+     * @param meterRegistry The registry to index
+     */
+    MeterNameIndex(MeterRegistry meterRegistry) {
+        // listen before indexing the existing meters so that none is missed, adding a meter twice is harmless
+        meterRegistry.config()
+                .onMeterAdded(this::add)
+                .onMeterRemoved(this::remove);
+        meterRegistry.forEachMeter(this::add);
+    }
+
+    /**
+     * @return The sorted names of the meters
+     */
+    SortedSet<String> names() {
+        return new TreeSet<>(meters.keySet());
+    }
+
+    /**
+     * @param name The name of the meters
+     * @param tags The tags the meters must have
+     * @return The meters with the given name and tags
+     */
+    Collection<Meter> find(String name, List<Tag> tags) {
+        Set<Meter> named = meters.get(name);
+        if (named == null) {
+            return List.of();
+        }
+        List<Meter> found = new ArrayList<>(named.size());
+        for (Meter meter : named) {
+            if (hasTags(meter, tags)) {
+                found.add(meter);
+            }
+        }
+        return found;
+    }
+
+    private void add(Meter meter) {
+        meters.compute(meter.getId().getName(), (name, named) -> {
+            Set<Meter> result = named == null ? ConcurrentHashMap.newKeySet() : named;
+            result.add(meter);
+            return result;
+        });
+    }
+
+    private void remove(Meter meter) {
+        meters.computeIfPresent(meter.getId().getName(), (name, named) -> {
+            named.remove(meter);
+            return named.isEmpty() ? null : named;
+        });
+    }
+
+    private static boolean hasTags(Meter meter, List<Tag> tags) {
+        for (Tag tag : tags) {
+            if (!tag.getValue().equals(meter.getId().getTag(tag.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
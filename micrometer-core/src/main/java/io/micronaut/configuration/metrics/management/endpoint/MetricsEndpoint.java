@@ -41,7 +41,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
@@ -75,7 +74,7 @@ public class MetricsEndpoint {
      */
     static final String NAME = "metrics";
 
-    private final MeterRegistry meterRegistry;
+    private final MeterNameIndex meterNameIndex;
 
     /**
      * @param meterRegistry The meter registry
@@ -83,7 +82,7 @@ public class MetricsEndpoint {
      */
     public MetricsEndpoint(MeterRegistry meterRegistry,
                            DataSource[] dataSources) {
-        this.meterRegistry = meterRegistry;
+        this.meterNameIndex = new MeterNameIndex(meterRegistry);
     }
 
     /**
@@ -93,10 +92,7 @@ public class MetricsEndpoint {
      */
     @Read
     public MetricNames listNames() {
-        return new MetricNames(
-                meterRegistry.getMeters().stream()
-                        .map(this::getName)
-                        .collect(TreeSet::new, TreeSet::add, TreeSet::addAll));
+        return new MetricNames(meterNameIndex.names());
     }
 
     /**
@@ -142,7 +138,7 @@ public class MetricsEndpoint {
             throw new UnsatisfiedArgumentException(Argument.of(List.class, "tags"), "Tags must be in the form key:value");
         }).collect(Collectors.toList());
 
-        Collection<Meter> meters = meterRegistry.find(name).tags(tags).meters();
+        Collection<Meter> meters = meterNameIndex.find(name, tags);
         if (meters.isEmpty()) {
             return null;
         }
@@ -226,16 +222,6 @@ public class MetricsEndpoint {
                 .collect(Collectors.toCollection(ArrayList::new));
     }
 
-    /**
-     * Get the meter name.
-     *
-     * @param meter Meter
-     * @return name of the meter
-     */
-    private String getName(Meter meter) {
-        return meter.getId().getName();
-    }
-
     /**
      * Response payload for a metric name listing.
      */
@@ -52,6 +52,7 @@ public class CountedInterceptor implements MethodInterceptor<Object, Object> {
 
     private final MeterRegistry meterRegistry;
     private final ConversionService conversionService;
+    private final InterceptedMethodFilter methodFilter;
 
     /**
      * @param meterRegistry The meter registry
@@ -65,15 +66,33 @@ public class CountedInterceptor implements MethodInterceptor<Object, Object> {
     /**
      * @param meterRegistry The meter registry
      * @param conversionService The conversion service
+     * @deprecated Pass the annotations configuration in new constructor
      */
-    @Inject
+    @Deprecated
     public CountedInterceptor(MeterRegistry meterRegistry, ConversionService conversionService) {
+        this(meterRegistry, conversionService, null);
+    }
+
+    /**
+     * @param meterRegistry The meter registry
+     * @param conversionService The conversion service
+     * @param annotationsConfiguration The configuration selecting which classes are instrumented
+     * @since 5.6.0
+     */
+    @Inject
+    public CountedInterceptor(MeterRegistry meterRegistry,
+                              ConversionService conversionService,
+                              @Nullable MetricsAnnotationsConfiguration annotationsConfiguration) {
         this.meterRegistry = meterRegistry;
         this.conversionService = conversionService;
+        this.methodFilter = InterceptedMethodFilter.of(annotationsConfiguration);
     }
 
     @Override
     public Object intercept(MethodInvocationContext<Object, Object> context) {
+        if (!methodFilter.isEnabled(context)) {
+            return context.proceed();
+        }
         final AnnotationMetadata metadata = context.getAnnotationMetadata();
         final String metricName = metadata.stringValue(Counted.class).orElse(DEFAULT_METRIC_NAME);
         if (StringUtils.isNotEmpty(metricName)) {
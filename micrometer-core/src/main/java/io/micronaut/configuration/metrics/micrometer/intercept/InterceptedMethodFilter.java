@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.intercept;
+
+import io.micronaut.aop.MethodInvocationContext;
+import io.micronaut.core.annotation.Internal;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.inject.ExecutableMethod;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Decides once per {@link ExecutableMethod} whether an annotation interceptor should record metrics.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class InterceptedMethodFilter {
+
+    private static final InterceptedMethodFilter ALL = new InterceptedMethodFilter(null);
+
+    @Nullable
+    private final Predicate<String> enabledTest;
+    private final Map<ExecutableMethod<?, ?>, Boolean> decisions = new ConcurrentHashMap<>();
+
+    private InterceptedMethodFilter(@Nullable Predicate<String> enabledTest) {
+        this.enabledTest = enabledTest;
+    }
+
+    /**
+     * @param configuration The annotations configuration, if any
+     * @return A filter for the given configuration
+     */
+    static InterceptedMethodFilter of(@Nullable MetricsAnnotationsConfiguration configuration) {
+        Predicate<String> enabledTest = configuration == null ? null : configuration.enabledTest();
+        return enabledTest == null ? ALL : new InterceptedMethodFilter(enabledTest);
+    }
+
+    /**
+     * @param context The invocation context
+     * @return Whether the invoked method should record metrics
+     */
+    boolean isEnabled(MethodInvocationContext<?, ?> context) {
+        if (enabledTest == null) {
+            return true;
+        }
+        ExecutableMethod<?, ?> method = context.getExecutableMethod();
+        Boolean enabled = decisions.get(method);
+        if (enabled == null) {
+            enabled = decisions.computeIfAbsent(method, m -> enabledTest.test(m.getDeclaringType().getName()));
+        }
+        return enabled;
+    }
+}
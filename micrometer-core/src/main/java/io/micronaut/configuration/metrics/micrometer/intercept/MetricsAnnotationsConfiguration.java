@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.intercept;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.util.CollectionUtils;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS;
+
+/**
+ * Controls which classes the {@link io.micrometer.core.annotation.Timed} and
+ * {@link io.micrometer.core.annotation.Counted} interceptors record metrics for.
+ *
+ * @since 5.6.0
+ */
+@ConfigurationProperties(MetricsAnnotationsConfiguration.PREFIX)
+public final class MetricsAnnotationsConfiguration {
+
+    public static final String PREFIX = MICRONAUT_METRICS + "annotations";
+
+    private List<String> includes;
+    private List<String> excludes;
+
+    /**
+     * @return the class name patterns to record annotation metrics for
+     */
+    @Nullable
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    /**
+     * Sets the class name patterns to record annotation metrics for. When set, only methods
+     * declared by a matching class are instrumented.
+     *
+     * @param includes regex patterns matched against the fully qualified declaring class name
+     *
+     * @see Pattern#compile(String)
+     */
+    public void setIncludes(@Nullable List<String> includes) {
+        this.includes = includes;
+    }
+
+    /**
+     * @return the class name patterns to exclude from annotation metrics
+     */
+    @Nullable
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Sets the class name patterns to exclude from annotation metrics. Exclusions take
+     * precedence over inclusions.
+     *
+     * @param excludes regex patterns matched against the fully qualified declaring class name
+     *
+     * @see Pattern#compile(String)
+     */
+    public void setExcludes(@Nullable List<String> excludes) {
+        this.excludes = excludes;
+    }
+
+    /**
+     * @return null (implying every class is instrumented), or a Predicate which,
+     *         when given a fully qualified class name, returns whether annotated
+     *         methods of that class should record metrics.
+     */
+    @Nullable
+    public Predicate<String> enabledTest() {
+        if (CollectionUtils.isEmpty(includes) && CollectionUtils.isEmpty(excludes)) {
+            return null;
+        }
+
+        List<Pattern> includePatterns = compile(includes);
+        List<Pattern> excludePatterns = compile(excludes);
+        return className -> (includePatterns.isEmpty() || matchesAny(includePatterns, className))
+            && !matchesAny(excludePatterns, className);
+    }
+
+    private static List<Pattern> compile(@Nullable List<String> patterns) {
+        if (CollectionUtils.isEmpty(patterns)) {
+            return List.of();
+        }
+        return patterns.stream()
+            .map(Pattern::compile)
+            .toList();
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String className) {
+        return patterns.stream().anyMatch(pattern -> pattern.matcher(className).matches());
+    }
+}
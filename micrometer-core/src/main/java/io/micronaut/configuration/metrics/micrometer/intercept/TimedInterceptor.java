@@ -27,6 +27,7 @@ import io.micronaut.aop.MethodInvocationContext;
 import io.micronaut.configuration.metrics.annotation.RequiresMetrics;
 import io.micronaut.core.annotation.AnnotationMetadata;
 import io.micronaut.core.annotation.AnnotationValue;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.core.annotation.TypeHint;
 import io.micronaut.core.async.publisher.Publishers;
 import io.micronaut.core.convert.ConversionService;
@@ -80,6 +81,7 @@ public class TimedInterceptor implements MethodInterceptor<Object, Object> {
 
     private final MeterRegistry meterRegistry;
     private final ConversionService conversionService;
+    private final InterceptedMethodFilter methodFilter;
 
     /**
      * @param meterRegistry The meter registry
@@ -93,16 +95,34 @@ public class TimedInterceptor implements MethodInterceptor<Object, Object> {
     /**
      * @param meterRegistry The meter registry
      * @param conversionService The conversion service
+     * @deprecated Pass the annotations configuration in new constructor
      */
-    @Inject
+    @Deprecated
     protected TimedInterceptor(MeterRegistry meterRegistry, ConversionService conversionService) {
+        this(meterRegistry, conversionService, null);
+    }
+
+    /**
+     * @param meterRegistry The meter registry
+     * @param conversionService The conversion service
+     * @param annotationsConfiguration The configuration selecting which classes are instrumented
+     * @since 5.6.0
+     */
+    @Inject
+    protected TimedInterceptor(MeterRegistry meterRegistry,
+                               ConversionService conversionService,
+                               @Nullable MetricsAnnotationsConfiguration annotationsConfiguration) {
         this.meterRegistry = meterRegistry;
         this.conversionService = conversionService;
+        this.methodFilter = InterceptedMethodFilter.of(annotationsConfiguration);
     }
 
     @Override
     @SuppressWarnings("java:S3776") // performance
     public Object intercept(MethodInvocationContext<Object, Object> context) {
+        if (!methodFilter.isEnabled(context)) {
+            return context.proceed();
+        }
         final AnnotationMetadata metadata = context.getAnnotationMetadata();
         final AnnotationValue<TimedSet> timedSet = metadata.getAnnotation(TimedSet.class);
         if (timedSet != null) {
@@ -67,4 +67,23 @@ class CountedAnnotationSpec extends Specification {
         cleanup:
         ctx.close()
     }
+
+    void "test counted annotation is skipped for excluded classes"() {
+        given:
+        ApplicationContext ctx = ApplicationContext.run(
+                'micronaut.metrics.annotations.excludes': ['io\\.micronaut\\.configuration\\.metrics\\.annotation\\..*']
+        )
+        CountedTarget tt = ctx.getBean(CountedTarget)
+        MeterRegistry registry = ctx.getBean(MeterRegistry)
+
+        when:
+        int result = tt.max(4, 10)
+
+        then:
+        result == 10
+        !registry.find("counted.test.max.blocking").counter()
+
+        cleanup:
+        ctx.close()
+    }
 }
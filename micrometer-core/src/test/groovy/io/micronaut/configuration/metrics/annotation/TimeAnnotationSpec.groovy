@@ -79,4 +79,23 @@ class TimeAnnotationSpec extends Specification {
         cleanup:
         ctx.close()
     }
+
+    void "test timed annotation is only applied to included classes"() {
+        given:
+        ApplicationContext ctx = ApplicationContext.run(
+                'micronaut.metrics.annotations.includes': ['com\\.example\\..*']
+        )
+        TimedTarget tt = ctx.getBean(TimedTarget)
+        MeterRegistry registry = ctx.getBean(MeterRegistry)
+
+        when:
+        Integer result = tt.max(4, 10)
+
+        then:
+        result == 10
+        !registry.find("timed.test.max.blocking").timer()
+
+        cleanup:
+        ctx.close()
+    }
 }
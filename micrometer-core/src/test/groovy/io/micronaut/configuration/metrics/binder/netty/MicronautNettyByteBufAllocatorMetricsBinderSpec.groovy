@@ -5,21 +5,41 @@ import io.micrometer.core.instrument.MeterRegistry
 import io.micrometer.core.instrument.Tags
 import io.micrometer.core.instrument.search.RequiredSearch
 import io.micronaut.context.ApplicationContext
+import io.micronaut.context.event.BeanCreatedEvent
+import io.micronaut.http.client.netty.NettyClientCustomizer
+import io.micronaut.http.server.netty.NettyServerCustomizer
+import io.micronaut.inject.BeanDefinition
+import io.micronaut.inject.BeanIdentifier
 import io.micronaut.http.annotation.Controller
 import io.micronaut.http.annotation.Get
 import io.micronaut.http.client.annotation.Client
 import io.micronaut.runtime.server.EmbeddedServer
+import io.netty.buffer.ByteBufAllocator
+import io.netty.buffer.PooledByteBufAllocator
+import io.netty.channel.Channel
+import io.netty.channel.embedded.EmbeddedChannel
 import spock.lang.Specification
 import spock.lang.Unroll
 import spock.util.concurrent.PollingConditions
 
 import static io.micronaut.configuration.metrics.binder.netty.ByteBufAllocatorMetricsBinder.ByteBufAllocatorMetricKind.POOLED_ALLOCATOR
 import static io.micronaut.configuration.metrics.binder.netty.ByteBufAllocatorMetricsBinder.ByteBufAllocatorMetricKind.UNPOOLED_ALLOCATOR
+import static io.micronaut.configuration.metrics.binder.netty.ByteBufAllocatorMetricsBinder.DEFAULT_ALLOCATOR
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ALLOC
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ALLOCATION
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ALLOCATOR
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ARENA
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.CACHE
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.COUNT
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.DIRECT
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LOCAL
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MEMORY
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MISS
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.POOLED
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SIZE
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SMALL
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.THREAD
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.USED
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot
 import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS
@@ -107,6 +127,131 @@ class MicronautNettyByteBufAllocatorMetricsBinderSpec extends Specification {
         context.close()
     }
 
+    void "test allocators used by the channels are metered once"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                                        : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.enabled"): true]
+        )
+        context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        ByteBufAllocatorMetricsBinder binder = context.getBean(ByteBufAllocatorMetricsBinder)
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true)
+
+        when:
+        context.getBean(ByteBufAllocatorMetricTestDummyClient).root()
+        binder.bind(allocator, 'test')
+        binder.bind(allocator, 'other')
+        binder.bind(PooledByteBufAllocator.DEFAULT, 'test')
+
+        then:
+        registry.get(dot(NETTY, ALLOC, MEMORY, USED))
+                .tags(Tags.of(ALLOC, POOLED).and(MEMORY, DIRECT).and(ALLOCATOR, DEFAULT_ALLOCATOR))
+                .gauges().size() == 1
+        registry.get(dot(NETTY, ALLOC, MEMORY, USED))
+                .tags(Tags.of(ALLOC, POOLED).and(MEMORY, DIRECT).and(ALLOCATOR, 'test'))
+                .gauges().size() == 1
+        !registry.find(dot(NETTY, ALLOC, MEMORY, USED)).tags(ALLOCATOR, 'other').gauge()
+
+        cleanup:
+        context.close()
+    }
+
+    void "test allocators are tagged with the name of the server or client using them"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                                        : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        List<NettyServerCustomizer> serverCustomizers = []
+        List<NettyClientCustomizer> clientCustomizers = []
+        context.getBean(ServerByteBufAllocatorBinder).onCreated(new BeanCreatedEvent<>(context, Mock(BeanDefinition), Mock(BeanIdentifier),
+                { serverCustomizers << it } as NettyServerCustomizer.Registry))
+        context.getBean(ClientByteBufAllocatorBinder).onCreated(new BeanCreatedEvent<>(context, Mock(BeanDefinition), Mock(BeanIdentifier),
+                { clientCustomizers << it } as NettyClientCustomizer.Registry))
+        PooledByteBufAllocator serverAllocator = new PooledByteBufAllocator(true)
+        PooledByteBufAllocator clientAllocator = new PooledByteBufAllocator(true)
+        PooledByteBufAllocator otherClientAllocator = new PooledByteBufAllocator(true)
+
+        when:
+        serverCustomizers*.specializeForChannel(channel(serverAllocator, 8443), NettyServerCustomizer.ChannelRole.CONNECTION)
+        clientCustomizers*.specializeForChannel(channel(clientAllocator, 0), NettyClientCustomizer.ChannelRole.CONNECTION)
+        clientCustomizers*.specializeForChannel(channel(clientAllocator, 0), NettyClientCustomizer.ChannelRole.CONNECTION)
+        clientCustomizers*.specializeForChannel(channel(otherClientAllocator, 0), NettyClientCustomizer.ChannelRole.CONNECTION)
+
+        then:
+        registry.get(dot(NETTY, ALLOC, MEMORY, USED))
+                .tags(Tags.of(ALLOC, POOLED).and(MEMORY, DIRECT))
+                .gauges()*.id*.getTag(ALLOCATOR) as Set == [DEFAULT_ALLOCATOR, 'server-8443', 'client', 'client-2'] as Set
+
+        cleanup:
+        context.close()
+    }
+
+    void "test thread local cache metrics"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                                        : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true)
+        context.getBean(ByteBufAllocatorMetricsBinder).bind(allocator, 'test')
+        Tags tags = Tags.of(ALLOC, POOLED).and(ALLOCATOR, 'test')
+
+        when:
+        allocator.directBuffer(256).release()
+        allocator.directBuffer(256).release()
+
+        then:
+        registry.get(dot(NETTY, ALLOC, THREAD, LOCAL, CACHE, COUNT)).tags(tags).gauge().value() == allocator.metric().numThreadLocalCaches()
+        registry.get(dot(NETTY, ALLOC, CACHE, MISS)).tags(tags.and(MEMORY, DIRECT).and(SIZE, SMALL)).functionCounter().count() ==
+                allocator.metric().directArenas()*.numSmallAllocations().sum()
+
+        cleanup:
+        context.close()
+    }
+
+    void "test arena metrics are read from a snapshot"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                                                  : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.enabled")          : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.bytebuf-allocators.snapshot-interval"): '1h']
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true)
+        context.getBean(ByteBufAllocatorMetricsBinder).bind(allocator, 'test')
+        Collection<Gauge> allocations = registry.get(dot(NETTY, ALLOC, ARENA, ALLOCATION, COUNT))
+                .tags(Tags.of(MEMORY, DIRECT).and(ALLOCATOR, 'test'))
+                .gauges()
+
+        expect:
+        allocations*.value().sum() == 0
+
+        when:
+        allocator.directBuffer(1024).release()
+
+        then: 'the live statistics moved but the gauges keep the collected values'
+        allocator.metric().directArenas()*.numAllocations().sum() > 0
+        allocations*.value().sum() == 0
+
+        cleanup:
+        context.close()
+    }
+
+    private static Channel channel(ByteBufAllocator allocator, int port) {
+        EmbeddedChannel channel = new EmbeddedChannel() {
+            @Override
+            protected SocketAddress localAddress0() {
+                new InetSocketAddress(port)
+            }
+        }
+        channel.config().allocator = allocator
+        channel
+    }
+
     @Client('/bytebufallocatortest')
     private static interface ByteBufAllocatorMetricTestDummyClient {
         @Get
@@ -1,31 +1,62 @@
 package io.micronaut.configuration.metrics.binder.netty
 
+import ch.qos.logback.classic.Logger
+import ch.qos.logback.classic.spi.ILoggingEvent
+import ch.qos.logback.core.read.ListAppender
 import io.micrometer.core.instrument.Counter
 import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.MockClock
 import io.micrometer.core.instrument.Tags
 import io.micrometer.core.instrument.Timer
 import io.micrometer.core.instrument.search.RequiredSearch
+import io.micrometer.core.instrument.simple.SimpleConfig
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import io.micronaut.context.ApplicationContext
+import io.micronaut.context.BeanProvider
+import io.micronaut.http.HttpHeaders
+import io.micronaut.http.HttpRequest
 import io.micronaut.http.annotation.Controller
 import io.micronaut.http.annotation.Get
+import io.micronaut.http.client.HttpClient
 import io.micronaut.http.client.annotation.Client
 import io.micronaut.runtime.server.EmbeddedServer
+import io.netty.buffer.DefaultByteBufHolder
+import io.netty.buffer.Unpooled
+import io.netty.channel.DefaultFileRegion
+import io.netty.channel.WriteBufferWaterMark
+import io.netty.channel.embedded.EmbeddedChannel
+import org.slf4j.LoggerFactory
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
 
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ACTIVE
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.BYTE
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.CHANNEL
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.COUNT
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.HTTP1
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.HTTP2
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LISTENER
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.OUTBOUND
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.PENDING
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.PROTOCOL
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.READ
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.STREAM
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TIME
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.UNWRITABLE
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WRITTEN
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot
 import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS
 import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_ENABLED
+import static java.util.concurrent.TimeUnit.MILLISECONDS
 
 class MicronautNettyChannelMetricsBinderSpec extends Specification {
 
+    private static final Tags TAGS = Tags.of(LISTENER, 'test').and(PROTOCOL, HTTP1)
+
     @Unroll
     void "test getting the beans #cfg #setting"() {
         when:
@@ -96,6 +127,276 @@ class MicronautNettyChannelMetricsBinderSpec extends Specification {
         context.close()
     }
 
+    void "test channel metrics are tagged with the listener and the protocol"() {
+        when:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                              : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.channels.enabled"): true]
+        )
+        EmbeddedServer server = context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        DummyClient client = context.getBean(DummyClient)
+
+        then:
+        client.root() == 'root'
+        registry.get(dot(NETTY, CHANNEL, BYTE))
+                .tags(Tags.of(BYTE, READ).and(LISTENER, server.port.toString()).and(PROTOCOL, HTTP1))
+                .counter()
+                .count() > 0
+        registry.get(dot(NETTY, CHANNEL, UNWRITABLE)).tags(Tags.of(LISTENER, server.port.toString())).counter().count() == 0
+        registry.get(dot(NETTY, CHANNEL, UNWRITABLE, TIME)).tags(Tags.of(LISTENER, server.port.toString())).timer()
+        registry.get(dot(NETTY, CHANNEL, PENDING, OUTBOUND, BYTE)).tags(Tags.of(LISTENER, server.port.toString())).gauge().value() >= 0
+
+        cleanup:
+        context.close()
+    }
+
+    void "test closed channels record their lifetime"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                              : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.channels.enabled"): true]
+        )
+        EmbeddedServer server = context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        HttpClient client = context.createBean(HttpClient, server.URL)
+
+        when:
+        String body = client.toBlocking().retrieve(HttpRequest.GET('/dummy').header(HttpHeaders.CONNECTION, 'close'))
+
+        then:
+        body == 'root'
+        new PollingConditions(timeout: 5).eventually {
+            registry.get(dot(NETTY, CHANNEL, TIME)).tags(Tags.of(ACTIVE, TIME)).timer().count() > 0
+        }
+
+        cleanup:
+        client.close()
+        context.close()
+    }
+
+    void "test HTTP/2 stream metrics"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                              : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.channels.enabled"): true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.http2.enabled")   : true,
+                 'micronaut.server.http-version'                        : '2.0',
+                 'micronaut.http.client.http-version'                   : '2.0',
+                 'micronaut.http.client.plaintext-mode'                 : 'h2c']
+        )
+        EmbeddedServer server = context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        DummyClient client = context.getBean(DummyClient)
+
+        when:
+        client.root()
+        client.root()
+
+        then:
+        registry.get(dot(NETTY, CHANNEL, BYTE))
+                .tags(Tags.of(BYTE, READ).and(PROTOCOL, HTTP2))
+                .counter()
+                .count() > 0
+        new PollingConditions(timeout: 5).eventually {
+            registry.get(dot(NETTY, HTTP2, STREAM, TIME)).tags(Tags.of(LISTENER, server.port.toString())).timer().count() >= 2
+        }
+
+        cleanup:
+        context.close()
+    }
+
+    void "test h2c upgraded connections are tagged and bound as HTTP/2"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                              : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.channels.enabled"): true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.http2.enabled")   : true,
+                 'micronaut.server.http-version'                        : '2.0']
+        )
+        EmbeddedServer server = context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        // the JDK client upgrades plaintext HTTP/2 connections with an HTTP/1.1 upgrade request
+        java.net.http.HttpClient client = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_2)
+                .build()
+        java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder(server.URI.resolve('/dummy')).GET().build()
+        Tags http2 = Tags.of(LISTENER, server.port.toString()).and(PROTOCOL, HTTP2)
+
+        when:
+        def upgrade = client.send(request, java.net.http.HttpResponse.BodyHandlers.ofString())
+        def response = client.send(request, java.net.http.HttpResponse.BodyHandlers.ofString())
+
+        then:
+        upgrade.body() == 'root'
+        response.version() == java.net.http.HttpClient.Version.HTTP_2
+        response.body() == 'root'
+        new PollingConditions(timeout: 5).eventually {
+            registry.get(dot(NETTY, CHANNEL, COUNT, ACTIVE)).tags(http2).gauge().value() == 1
+            registry.get(dot(NETTY, CHANNEL, BYTE)).tags(http2.and(BYTE, READ)).counter().count() > 0
+            registry.get(dot(NETTY, HTTP2, STREAM, TIME)).tags(Tags.of(LISTENER, server.port.toString())).timer().count() >= 1
+        }
+        registry.get(dot(NETTY, CHANNEL, COUNT, ACTIVE))
+                .tags(Tags.of(LISTENER, server.port.toString()).and(PROTOCOL, HTTP1))
+                .gauge()
+                .value() == 0
+
+        cleanup:
+        context.close()
+    }
+
+    void "test the bytes are counted once the reads are complete or the channel is flushed"() {
+        given:
+        MeterRegistry registry = new SimpleMeterRegistry()
+        EmbeddedChannel channel = new EmbeddedChannel(metricsHandler(registry))
+        Counter read = registry.get(dot(NETTY, CHANNEL, BYTE)).tags(TAGS.and(BYTE, READ)).counter()
+        Counter written = registry.get(dot(NETTY, CHANNEL, BYTE)).tags(TAGS.and(BYTE, WRITTEN)).counter()
+
+        when:
+        channel.writeOneInbound(Unpooled.wrappedBuffer(new byte[10]))
+        channel.writeOneInbound(new DefaultByteBufHolder(Unpooled.wrappedBuffer(new byte[5])))
+        channel.write(Unpooled.wrappedBuffer(new byte[3]))
+        channel.write(new DefaultByteBufHolder(Unpooled.wrappedBuffer(new byte[4])))
+
+        then:
+        read.count() == 0
+        written.count() == 0
+
+        when:
+        channel.flushInbound()
+        channel.flush()
+
+        then:
+        read.count() == 15
+        written.count() == 7
+
+        cleanup:
+        channel.finishAndReleaseAll()
+    }
+
+    void "test the bytes of file regions are counted"() {
+        given:
+        MeterRegistry registry = new SimpleMeterRegistry()
+        EmbeddedChannel channel = new EmbeddedChannel(metricsHandler(registry))
+        File file = File.createTempFile('region', '.bin')
+        file.bytes = new byte[64]
+
+        when:
+        channel.writeAndFlush(new DefaultFileRegion(file, 8, 32))
+
+        then:
+        registry.get(dot(NETTY, CHANNEL, BYTE)).tags(TAGS.and(BYTE, WRITTEN)).counter().count() == 32
+
+        cleanup:
+        channel.finishAndReleaseAll()
+        file.delete()
+    }
+
+    void "test unsupported message types are only reported once per handler"() {
+        given:
+        ListAppender<ILoggingEvent> appender = new ListAppender<>()
+        appender.start()
+        Logger logger = (Logger) LoggerFactory.getLogger(ChannelMetricsHandler)
+        logger.addAppender(appender)
+        MeterRegistry registry = new SimpleMeterRegistry()
+        EmbeddedChannel channel = new EmbeddedChannel(metricsHandler(registry))
+
+        when:
+        channel.writeAndFlush('first')
+        channel.writeAndFlush('second')
+        channel.writeInbound('third')
+        channel.writeAndFlush(42)
+
+        then:
+        appender.list*.formattedMessage == [
+                'Message type not supported, its bytes are not counted: java.lang.String',
+                'Message type not supported, its bytes are not counted: java.lang.Integer'
+        ]
+        registry.get(dot(NETTY, CHANNEL, BYTE)).tags(TAGS.and(BYTE, WRITTEN)).counter().count() == 0
+
+        when:
+        EmbeddedChannel other = new EmbeddedChannel(metricsHandler(new SimpleMeterRegistry()))
+        other.writeAndFlush('fourth')
+
+        then:
+        appender.list.size() == 3
+
+        cleanup:
+        logger.detachAppender(appender)
+        channel?.finishAndReleaseAll()
+        other?.finishAndReleaseAll()
+    }
+
+    void "test the time a channel stays unwritable is recorded"() {
+        given:
+        MockClock clock = new MockClock()
+        MeterRegistry registry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock)
+        EmbeddedChannel channel = new EmbeddedChannel(metricsHandler(registry))
+        channel.config().writeBufferWaterMark = new WriteBufferWaterMark(8, 16)
+        Counter unwritable = registry.get(dot(NETTY, CHANNEL, UNWRITABLE)).tags(TAGS).counter()
+        Timer unwritableTime = registry.get(dot(NETTY, CHANNEL, UNWRITABLE, TIME)).tags(TAGS).timer()
+
+        when:
+        channel.write(Unpooled.wrappedBuffer(new byte[32]))
+
+        then:
+        !channel.writable
+        unwritable.count() == 1
+        unwritableTime.count() == 0
+        registry.get(dot(NETTY, CHANNEL, UNWRITABLE, ACTIVE)).tags(TAGS).gauge().value() == 1
+        registry.get(dot(NETTY, CHANNEL, PENDING, OUTBOUND, BYTE)).tags(TAGS).gauge().value() == 32
+
+        when:
+        clock.add(Duration.ofMillis(25))
+        channel.flush()
+
+        then:
+        channel.writable
+        unwritable.count() == 1
+        unwritableTime.count() == 1
+        unwritableTime.totalTime(MILLISECONDS) == 25
+        registry.get(dot(NETTY, CHANNEL, UNWRITABLE, ACTIVE)).tags(TAGS).gauge().value() == 0
+        registry.get(dot(NETTY, CHANNEL, PENDING, OUTBOUND, BYTE)).tags(TAGS).gauge().value() == 0
+
+        cleanup:
+        channel.finishAndReleaseAll()
+    }
+
+    void "test channels are counted when the handler is added after their registration"() {
+        given:
+        MockClock clock = new MockClock()
+        MeterRegistry registry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock)
+        ChannelMetricsHandler handler = metricsHandler(registry)
+        EmbeddedChannel channel = new EmbeddedChannel()
+        Counter count = registry.get(dot(NETTY, CHANNEL, COUNT)).tags(TAGS.and(CHANNEL, COUNT)).counter()
+        Timer lifetime = registry.get(dot(NETTY, CHANNEL, TIME)).tags(TAGS.and(ACTIVE, TIME)).timer()
+
+        when:
+        channel.pipeline().addFirst(handler)
+        clock.add(Duration.ofMillis(10))
+        channel.writeOneInbound(Unpooled.wrappedBuffer(new byte[4]))
+
+        then:
+        count.count() == 1
+        registry.get(dot(NETTY, CHANNEL, COUNT, ACTIVE)).tags(TAGS.and(CHANNEL, ACTIVE)).gauge().value() == 1
+
+        when:
+        channel.close()
+
+        then:
+        count.count() == 1
+        registry.get(dot(NETTY, CHANNEL, COUNT, ACTIVE)).tags(TAGS.and(CHANNEL, ACTIVE)).gauge().value() == 0
+        lifetime.count() == 1
+        lifetime.totalTime(MILLISECONDS) == 10
+
+        cleanup:
+        channel.finishAndReleaseAll()
+    }
+
+    private static ChannelMetricsHandler metricsHandler(MeterRegistry registry) {
+        new ChannelMetricsHandler({ -> registry } as BeanProvider<MeterRegistry>, TAGS)
+    }
+
     @Client('/dummy')
     private static interface DummyClient {
         @Get
@@ -1,6 +1,8 @@
 package io.micronaut.configuration.metrics.binder.netty
 
 import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.FunctionCounter
+import io.micrometer.core.instrument.FunctionTimer
 import io.micrometer.core.instrument.MeterRegistry
 import io.micrometer.core.instrument.Tags
 import io.micrometer.core.instrument.Timer
@@ -10,17 +12,40 @@ import io.micronaut.http.annotation.Controller
 import io.micronaut.http.annotation.Get
 import io.micronaut.http.client.annotation.Client
 import io.micronaut.runtime.server.EmbeddedServer
+import io.netty.channel.EventLoopGroup
+import io.netty.channel.SingleThreadEventLoop
+import io.netty.incubator.channel.uring.IOUring
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup
+import spock.lang.Requires
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
 
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.BUSY
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.COUNT
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.ELEMENT
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EVENTLOOP
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.EXECUTION_TIME
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.GLOBAL
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.GROUP
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LATENESS
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MAX
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.PARENT
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.PENDING
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.QUEUE
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SCHEDULED
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SIZE
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.STALL
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TAIL
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TASK
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TIME
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.UTILIZATION
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WAIT_TIME
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.WORKER
 import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot
@@ -32,7 +57,8 @@ class MicronautNettyQueuesMetricsBinderSpec extends Specification {
     private static List<Class> eventLoopGroupFactoryInstrumentedClasses = [
             InstrumentedNioEventLoopGroupFactory,
             InstrumentedEpollEventLoopGroupFactory,
-            InstrumentedKQueueEventLoopGroupFactory
+            InstrumentedKQueueEventLoopGroupFactory,
+            InstrumentedIOUringEventLoopGroupFactory
     ]
 
     @Unroll
@@ -56,6 +82,43 @@ class MicronautNettyQueuesMetricsBinderSpec extends Specification {
         MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled" | false   | false
     }
 
+    void "test the io_uring factory is only used when the transport is available"() {
+        when:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                            : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled"): true]
+        )
+
+        then:
+        context.findBean(InstrumentedIOUringEventLoopGroupFactory).isPresent() == IOUring.isAvailable()
+        context.findBean(InstrumentedNioEventLoopGroupFactory).isPresent()
+
+        cleanup:
+        context.close()
+    }
+
+    @Requires({ IOUring.isAvailable() })
+    void "test io_uring event loop queues are instrumented"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                            : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        EventLoopGroup group = context.getBean(InstrumentedIOUringEventLoopGroupFactory).createEventLoopGroup(1, (Integer) null)
+
+        when:
+        group.submit({ } as Runnable).get()
+
+        then:
+        group instanceof IOUringEventLoopGroup
+        registry.get(dot(NETTY, QUEUE, SIZE)).gauges()
+
+        cleanup:
+        group.shutdownGracefully().syncUninterruptibly()
+        context.close()
+    }
+
     void "test queue metrics are present"() {
         when:
         ApplicationContext context = ApplicationContext.run(
@@ -128,6 +191,317 @@ class MicronautNettyQueuesMetricsBinderSpec extends Specification {
         context.close()
     }
 
+    void "test lightweight queue metrics are present"() {
+        when:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                            : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled"): true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.mode")   : 'lightweight']
+        )
+        context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+
+        RequiredSearch search = registry.get(dot(NETTY, QUEUE, GLOBAL, WAIT_TIME))
+        search.tags(Tags.of(GROUP, WORKER))
+        FunctionTimer globalWorkerWaitTimer = search.functionTimer()
+
+        search = registry.get(dot(NETTY, QUEUE, GLOBAL, EXECUTION_TIME))
+        search.tags(Tags.of(GROUP, WORKER))
+        FunctionTimer globalWorkerExecutionTimer = search.functionTimer()
+
+        search = registry.get(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT))
+        search.tags(Tags.of(GROUP, WORKER))
+        FunctionCounter globalWorkerTaskCounter = search.functionCounter()
+
+        DummyClient client = context.getBean(DummyClient)
+
+        then:
+        client.test() == 'root'
+        client.test() == 'root'
+        client.test() == 'root'
+        globalWorkerWaitTimer.count() > 0
+        globalWorkerExecutionTimer.count() > 0
+        globalWorkerExecutionTimer.totalTime(TimeUnit.NANOSECONDS) > 0
+        globalWorkerTaskCounter.count() > 0
+        globalWorkerTaskCounter.id.description == 'The number of tasks submitted to the worker Queues.'
+        registry.get(dot(NETTY, QUEUE, EXECUTION_TIME, MAX)).tags(Tags.of(GROUP, WORKER)).timeGauge()
+
+        cleanup:
+        context.close()
+    }
+
+    void "test sampled queue metrics keep exact task counts"() {
+        when:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                                    : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled")        : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.sample-interval"): '1h']
+        )
+        context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+
+        RequiredSearch search = registry.get(dot(NETTY, QUEUE, GLOBAL, WAIT_TIME))
+        search.tags(Tags.of(GROUP, WORKER))
+        Timer globalWorkerWaitTimer = search.timer()
+
+        search = registry.get(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT))
+        search.tags(Tags.of(GROUP, WORKER))
+        Counter globalWorkerTaskCounter = search.counter()
+
+        int workerQueues = registry.get(dot(NETTY, QUEUE, SIZE)).tags(Tags.of(GROUP, WORKER)).gauges().size()
+        DummyClient client = context.getBean(DummyClient)
+
+        then:
+        client.test() == 'root'
+        client.test() == 'root'
+        client.test() == 'root'
+        globalWorkerTaskCounter.count() > 0
+        globalWorkerWaitTimer.count() <= workerQueues
+
+        cleanup:
+        context.close()
+    }
+
+    @Unroll
+    void "test event loop group #name is tagged #tag"() {
+        expect:
+        InstrumentedEventLoopTaskQueueFactory.groupTag(name) == tag
+
+        where:
+        name      | tag
+        null      | WORKER
+        'default' | WORKER
+        'worker'  | WORKER
+        'parent'  | PARENT
+        'client'  | 'client'
+    }
+
+    void "test queues of a named event loop group are tagged with its name"() {
+        when:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                            : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled"): true,
+                 'micronaut.netty.event-loops.custom.num-threads'     : 1,
+                 'micronaut.http.client.event-loop-group'             : 'custom']
+        )
+        context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        DummyClient client = context.getBean(DummyClient)
+
+        then:
+        client.test() == 'root'
+        registry.get(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT)).tags(Tags.of(GROUP, 'custom')).counter().count() > 0
+        registry.get(dot(NETTY, QUEUE, SIZE)).tags(Tags.of(GROUP, 'custom')).gauges().size() == 1
+
+        cleanup:
+        context.close()
+    }
+
+    void "test stalled event loops are detected"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                                  : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled")      : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.stall.enabled")       : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.stall.threshold")     : '50ms',
+                 (MICRONAUT_METRICS_BINDERS + ".netty.stall.interval")      : '10ms',
+                 (MICRONAUT_METRICS_BINDERS + ".netty.stall.capture-stack") : true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        PollingConditions conditions = new PollingConditions(timeout: 5)
+
+        when:
+        context.getBean(EventLoopGroup).next().execute { Thread.sleep(300) }
+
+        then:
+        conditions.eventually {
+            registry.get(dot(NETTY, EVENTLOOP, STALL)).tags(Tags.of(GROUP, WORKER)).counters()*.count().sum() >= 1
+            registry.get(dot(NETTY, EVENTLOOP, STALL, TIME)).tags(Tags.of(GROUP, WORKER)).timers()*.count().sum() >= 1
+        }
+
+        cleanup:
+        context.close()
+    }
+
+    void "test the stall detector heartbeats are not recorded in the queue metrics"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                            : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled"): true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.stall.enabled") : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.stall.interval"): '5ms']
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        EventLoopGroup group = context.getBean(EventLoopGroup)
+
+        when:
+        Thread.sleep(200)
+        CountDownLatch ran = new CountDownLatch(1)
+        group.next().execute { ran.countDown() }
+
+        then:
+        ran.await(5, TimeUnit.SECONDS)
+        new PollingConditions(timeout: 5).eventually {
+            registry.get(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT)).tags(Tags.of(GROUP, WORKER)).counter().count() == 1
+        }
+        registry.get(dot(NETTY, QUEUE, GLOBAL, EXECUTION_TIME)).tags(Tags.of(GROUP, WORKER)).timer().count() <= 1
+
+        cleanup:
+        context.close()
+    }
+
+    void "test tail tasks are recorded"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                            : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        SingleThreadEventLoop eventLoop = (SingleThreadEventLoop) context.getBean(EventLoopGroup).next()
+        CountDownLatch ran = new CountDownLatch(1)
+
+        when:
+        eventLoop.execute { eventLoop.executeAfterEventLoopIteration { ran.countDown() } }
+
+        then:
+        ran.await(5, TimeUnit.SECONDS)
+        registry.get(dot(NETTY, QUEUE, TAIL, SIZE)).tags(Tags.of(GROUP, WORKER)).gauges()
+        new PollingConditions(timeout: 5).eventually {
+            registry.get(dot(NETTY, QUEUE, TAIL, ELEMENT, COUNT)).tags(Tags.of(GROUP, WORKER)).counters()*.count().sum() == 1
+            registry.get(dot(NETTY, QUEUE, TAIL, EXECUTION_TIME)).tags(Tags.of(GROUP, WORKER)).timers()*.count().sum() == 1
+        }
+
+        cleanup:
+        context.close()
+    }
+
+    void "test tail tasks can be removed before they run"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                            : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        SingleThreadEventLoop eventLoop = (SingleThreadEventLoop) context.getBean(EventLoopGroup).next()
+        AtomicBoolean ran = new AtomicBoolean()
+        Runnable tailTask = { ran.set(true) } as Runnable
+
+        when:
+        boolean removed = eventLoop.submit({
+            eventLoop.executeAfterEventLoopIteration(tailTask)
+            eventLoop.removeAfterEventLoopIterationTask(tailTask)
+        } as Callable<Boolean>).get(5, TimeUnit.SECONDS)
+        eventLoop.submit({} as Runnable).get(5, TimeUnit.SECONDS)
+
+        then:
+        removed
+        !ran.get()
+        registry.get(dot(NETTY, QUEUE, TAIL, ELEMENT, COUNT)).tags(Tags.of(GROUP, WORKER)).counters()*.count().sum() == 1
+        registry.get(dot(NETTY, QUEUE, TAIL, EXECUTION_TIME)).tags(Tags.of(GROUP, WORKER)).timers()*.count().sum() == 0
+
+        cleanup:
+        context.close()
+    }
+
+    void "test scheduled task lateness is recorded"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                               : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled")   : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.lateness.enabled") : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.lateness.interval"): '10ms']
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        EventLoopGroup group = context.getBean(EventLoopGroup)
+
+        when:
+        group.next().execute { Thread.sleep(100) }
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            registry.get(dot(NETTY, EVENTLOOP, SCHEDULED, LATENESS)).tags(Tags.of(GROUP, WORKER)).timers()*.count().sum() > 0
+            registry.get(dot(NETTY, EVENTLOOP, SCHEDULED, LATENESS)).tags(Tags.of(GROUP, WORKER)).timers()*.max(TimeUnit.MILLISECONDS).max() >= 50
+        }
+
+        cleanup:
+        context.close()
+    }
+
+    void "test the lateness probes are not recorded in the queue metrics"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                               : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled")   : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.lateness.enabled") : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.lateness.interval"): '5ms']
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+
+        when:
+        Thread.sleep(200)
+
+        then:
+        registry.get(dot(NETTY, EVENTLOOP, SCHEDULED, LATENESS)).tags(Tags.of(GROUP, WORKER)).timers()*.count().sum() > 0
+        registry.get(dot(NETTY, QUEUE, GLOBAL, ELEMENT, COUNT)).tags(Tags.of(GROUP, WORKER)).counter().count() == 0
+
+        cleanup:
+        context.close()
+    }
+
+    void "test event loop utilization metrics"() {
+        when:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                                : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled")    : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.utilization.enabled"): true]
+        )
+        context.getBean(EmbeddedServer).start()
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        DummyClient client = context.getBean(DummyClient)
+        int workerQueues = registry.get(dot(NETTY, QUEUE, SIZE)).tags(Tags.of(GROUP, WORKER)).gauges().size()
+
+        then:
+        client.test() == 'root'
+        registry.get(dot(NETTY, EVENTLOOP, UTILIZATION)).tags(Tags.of(GROUP, WORKER)).gauges().size() == workerQueues
+        registry.get(dot(NETTY, EVENTLOOP, UTILIZATION)).tags(Tags.of(GROUP, PARENT)).gauges()
+        registry.get(dot(NETTY, EVENTLOOP, PENDING, TASK)).tags(Tags.of(GROUP, WORKER)).gauges().every { it.value() >= 0 }
+        registry.get(dot(NETTY, EVENTLOOP, BUSY, TIME)).tags(Tags.of(GROUP, WORKER)).functionCounters()*.count().sum() > 0
+        registry.get(dot(NETTY, EVENTLOOP, TASK, TIME)).tags(Tags.of(GROUP, WORKER)).functionCounters().size() == workerQueues
+
+        cleanup:
+        context.close()
+    }
+
+    void "test event loop task time is measured with the CPU clock"() {
+        given:
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                                : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.queues.enabled")    : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.utilization.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        CountDownLatch ran = new CountDownLatch(1)
+
+        when:
+        context.getBean(EventLoopGroup).next().execute {
+            Thread.sleep(300)
+            ran.countDown()
+        }
+
+        then:
+        ran.await(5, TimeUnit.SECONDS)
+        new PollingConditions(timeout: 5).eventually {
+            double taskTime = registry.get(dot(NETTY, EVENTLOOP, TASK, TIME)).tags(Tags.of(GROUP, WORKER)).functionCounters()*.count().sum()
+            double busyTime = registry.get(dot(NETTY, EVENTLOOP, BUSY, TIME)).tags(Tags.of(GROUP, WORKER)).functionCounters()*.count().sum()
+            taskTime > 0
+            taskTime < 0.3
+            taskTime <= busyTime
+        }
+
+        cleanup:
+        context.close()
+    }
+
     @Client('/nettyQueuesMetricsTest')
     private static interface DummyClient {
         @Get
@@ -0,0 +1,150 @@
+package io.micronaut.configuration.metrics.binder.netty
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micronaut.context.ApplicationContext
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.PooledByteBufAllocator
+import io.netty.util.ResourceLeakDetector
+import io.netty.util.ResourceLeakDetectorFactory
+import io.netty.util.ResourceLeakTracker
+import spock.lang.Specification
+import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.DIRECT
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.LEAK
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MAX
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.MEMORY
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.NETTY
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.RECORD
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.RESOURCE
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.SITE
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.TRACED
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.USED
+import static io.micronaut.configuration.metrics.binder.netty.NettyMetrics.dot
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_BINDERS
+import static io.micronaut.configuration.metrics.micrometer.MeterRegistryFactory.MICRONAUT_METRICS_ENABLED
+
+class MicronautNettyResourceLeakMetricsBinderSpec extends Specification {
+
+    @Unroll
+    void "test getting the beans #cfg #setting"() {
+        when:
+        ApplicationContext context = ApplicationContext.run([(cfg): setting])
+
+        then:
+        context.findBean(ResourceLeakMetricsBinder).isPresent() == result
+
+        cleanup:
+        context.close()
+
+        where:
+        cfg                                                | setting | result
+        MICRONAUT_METRICS_ENABLED                          | true    | false
+        MICRONAUT_METRICS_ENABLED                          | false   | false
+        MICRONAUT_METRICS_BINDERS + ".netty.leaks.enabled" | true    | true
+        MICRONAUT_METRICS_BINDERS + ".netty.leaks.enabled" | false   | false
+    }
+
+    void "test leaks reported by the detectors are counted"() {
+        given:
+        ResourceLeakDetector.Level level = ResourceLeakDetector.level
+        ResourceLeakDetector.level = ResourceLeakDetector.Level.PARANOID
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                           : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.leaks.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        ResourceLeakDetector<LeakingResource> detector = ResourceLeakDetectorFactory.instance().newResourceLeakDetector(LeakingResource)
+
+        expect:
+        registry.get(dot(NETTY, MEMORY, DIRECT, USED)).gauge()
+        registry.get(dot(NETTY, MEMORY, DIRECT, MAX)).gauge().value() > 0
+
+        when:
+        detector.track(new LeakingResource())
+
+        then:
+        new PollingConditions(timeout: 5, delay: 0.1).eventually {
+            System.gc()
+            LeakingResource resource = new LeakingResource()
+            ResourceLeakTracker<LeakingResource> tracker = detector.track(resource)
+            tracker.close(resource)
+
+            assert registry.get(dot(NETTY, LEAK, SITE))
+                    .tags(Tags.of(RESOURCE, LeakingResource.simpleName).and(RECORD, TRACED))
+                    .counter().count() > 0
+        }
+
+        cleanup:
+        context.close()
+        ResourceLeakDetector.level = level
+    }
+
+    void "test leaks of pooled buffers are counted when the binder created their detector"() {
+        given:
+        ResourceLeakDetector.Level level = ResourceLeakDetector.level
+        ResourceLeakDetector.level = ResourceLeakDetector.Level.PARANOID
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                           : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.leaks.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        ResourceLeakMetricsBinder binder = context.getBean(ResourceLeakMetricsBinder)
+
+        when:
+        leakPooledBuffer()
+        // the buffers of the whole JVM share one detector, created by this binder when no other spec allocated a buffer before
+        boolean counted = binder.byteBufLeaksCounted()
+
+        then:
+        new PollingConditions(timeout: 5, delay: 0.1).eventually {
+            System.gc()
+            PooledByteBufAllocator.DEFAULT.directBuffer(16).release()
+
+            double leaks = registry.find(dot(NETTY, LEAK, SITE)).tags(RESOURCE, ByteBuf.simpleName).counter()?.count() ?: 0
+            assert (leaks > 0) == counted
+        }
+
+        cleanup:
+        context.close()
+        ResourceLeakDetector.level = level
+    }
+
+    void "test the detectors stop counting once the binder is closed"() {
+        given:
+        ResourceLeakDetector.Level level = ResourceLeakDetector.level
+        ResourceLeakDetector.level = ResourceLeakDetector.Level.PARANOID
+        ApplicationContext context = ApplicationContext.run(
+                [MICRONAUT_METRICS_ENABLED                           : true,
+                 (MICRONAUT_METRICS_BINDERS + ".netty.leaks.enabled"): true]
+        )
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        ResourceLeakDetector<LeakingResource> detector = ResourceLeakDetectorFactory.instance().newResourceLeakDetector(LeakingResource)
+        ResourceLeakDetectorFactory factory = ResourceLeakDetectorFactory.instance()
+
+        when:
+        context.close()
+        detector.track(new LeakingResource())
+        (1..20).each {
+            System.gc()
+            LeakingResource resource = new LeakingResource()
+            detector.track(resource).close(resource)
+        }
+
+        then:
+        ResourceLeakDetectorFactory.instance() != factory
+        !registry.find(dot(NETTY, LEAK, SITE)).tags(RESOURCE, LeakingResource.simpleName).counter()
+
+        cleanup:
+        ResourceLeakDetector.level = level
+    }
+
+    private static void leakPooledBuffer() {
+        PooledByteBufAllocator.DEFAULT.directBuffer(16).writeInt(1)
+    }
+
+    static class LeakingResource {
+    }
+}
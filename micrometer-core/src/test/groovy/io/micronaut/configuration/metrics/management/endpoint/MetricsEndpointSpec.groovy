@@ -185,6 +185,48 @@ class MetricsEndpointSpec extends Specification {
         e.status == NOT_FOUND
     }
 
+    void "test metrics endpoint follows the meters added and removed"() {
+        given:
+        run('endpoints.metrics.sensitive': false,
+            (MICRONAUT_METRICS_ENABLED)  : true)
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        client.exchange("/metrics", Map)
+
+        when:
+        def first = registry.counter('indexed.counter', 'kind', 'first')
+        registry.counter('indexed.counter', 'kind', 'second').increment(2)
+        first.increment()
+        Map names = client.exchange("/metrics", Map).body()
+        Map details = client.exchange("/metrics/indexed.counter?tag=kind:first", Map).body()
+
+        then:
+        names.names.contains('indexed.counter')
+        details.measurements[0].value == 1
+        details.availableTags.isEmpty()
+
+        when:
+        registry.remove(first)
+        details = client.exchange("/metrics/indexed.counter", Map).body()
+
+        then:
+        details.measurements[0].value == 2
+        details.availableTags == [[tag: 'kind', values: ['second']]]
+
+        when:
+        registry.find('indexed.counter').meters().each { registry.remove(it) }
+        names = client.exchange("/metrics", Map).body()
+
+        then:
+        !names.names.contains('indexed.counter')
+
+        when:
+        client.exchange("/metrics/indexed.counter", Map)
+
+        then:
+        HttpClientResponseException e = thrown()
+        e.status == NOT_FOUND
+    }
+
     @Unroll
     void "test metrics endpoint get JVM details #name disabled"() {
         given:
@@ -15,9 +15,14 @@
  */
 package io.micronaut.configuration.metrics.micrometer.prometheus;
 
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.prometheus.PrometheusConfig;
 import io.micrometer.prometheus.PrometheusMeterRegistry;
 import io.micronaut.configuration.metrics.micrometer.ExportConfigurationProperties;
 import io.micronaut.context.annotation.Factory;
+import io.micronaut.core.annotation.Nullable;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exemplars.ExemplarSampler;
 import jakarta.inject.Singleton;
 
 import java.util.Properties;
@@ -39,11 +44,14 @@ public class PrometheusMeterRegistryFactory {
      * configuration is included in project.
      *
      * @param exportConfigurationProperties The export configuration
+     * @param exemplarSampler The sampler of the exemplars exposed in the OpenMetrics format, if any
      * @return PrometheusMeterRegistry
      */
     @Singleton
-    PrometheusMeterRegistry prometheusConfig(ExportConfigurationProperties exportConfigurationProperties) {
+    PrometheusMeterRegistry prometheusConfig(ExportConfigurationProperties exportConfigurationProperties,
+                                             @Nullable ExemplarSampler exemplarSampler) {
         Properties exportConfig = exportConfigurationProperties.getExport();
-        return new PrometheusMeterRegistry(exportConfig::getProperty);
+        PrometheusConfig prometheusConfig = exportConfig::getProperty;
+        return new PrometheusMeterRegistry(prometheusConfig, new CollectorRegistry(true), Clock.SYSTEM, exemplarSampler);
     }
 }
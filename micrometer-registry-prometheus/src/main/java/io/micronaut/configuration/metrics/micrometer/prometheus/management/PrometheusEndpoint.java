@@ -16,8 +16,38 @@
 package io.micronaut.configuration.metrics.micrometer.prometheus.management;
 
 import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.util.CollectionUtils;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Header;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.http.server.types.files.StreamedFile;
 import io.micronaut.management.endpoint.annotation.Endpoint;
 import io.micronaut.management.endpoint.annotation.Read;
+import io.micronaut.scheduling.TaskExecutors;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Adds a management endpoint for Prometheus.
@@ -30,22 +60,188 @@ public class PrometheusEndpoint {
 
     public static final String ID = "prometheus";
 
+    static final int CHUNK_SIZE = 32 * 1024;
+    private static final int MAX_CHUNKS = 4;
+    static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int GZIP_BUFFER_SIZE = 8 * 1024;
+    static final String GZIP = "gzip";
+
     private final PrometheusMeterRegistry prometheusMeterRegistry;
+    private final Executor scrapeExecutor;
+    @Nullable
+    private final ScrapeCache scrapeCache;
 
     /**
      * @param prometheusMeterRegistry The meter registry
+     * @deprecated Use {@link #PrometheusEndpoint(PrometheusMeterRegistry, Executor, Duration)} instead.
      */
+    @Deprecated(since = "5.6.0")
     public PrometheusEndpoint(PrometheusMeterRegistry prometheusMeterRegistry) {
+        this(prometheusMeterRegistry, ForkJoinPool.commonPool(), Duration.ZERO);
+    }
+
+    /**
+     * @param prometheusMeterRegistry The meter registry
+     * @param scrapeExecutor          The executor the streamed scrapes are written on
+     * @param cacheTtl                The time a rendered scrape is served for, no cache when zero
+     * @since 5.6.0
+     */
+    @Inject
+    public PrometheusEndpoint(PrometheusMeterRegistry prometheusMeterRegistry,
+                              @Named(TaskExecutors.BLOCKING) Executor scrapeExecutor,
+                              @Value("${endpoints." + ID + ".cache-ttl:0s}") Duration cacheTtl) {
         this.prometheusMeterRegistry = prometheusMeterRegistry;
+        this.scrapeExecutor = scrapeExecutor;
+        this.scrapeCache = cacheTtl.isNegative() || cacheTtl.isZero() ? null : new ScrapeCache(cacheTtl, TIMEOUT);
     }
 
     /**
-     * Scrapes the data.
+     * Scrapes the data into a String.
      *
      * @return the data
      */
-    @Read(produces = "text/plain; version=0.0.4")
     public String scrape() {
         return prometheusMeterRegistry.scrape();
     }
+
+    /**
+     * Streams the scrape. The scrape is written on the scrape executor into bounded chunks
+     * that are sent as they are written, so the memory used does not depend on the number of series.
+     * <p>
+     * The OpenMetrics format, which carries the exemplars, is used when accepted by the client,
+     * as well as the delimited protobuf format, which has precedence, and the scrape is compressed while it is written when the client accepts gzip.
+     * <p>
+     * The scrape can be restricted to the series whose name is one of the {@code name[]} parameters
+     * or starts with one of the {@code include-prefix} parameters. Only the collectors of the
+     * selected names are collected, looked up in the name index of the collector registry.
+     * <p>
+     * When a cache time to live is configured, the complete scrapes are rendered once per time to live,
+     * format and encoding, and the concurrent scrapes wait for the rendering in progress.
+     *
+     * @param accept          The accepted content types
+     * @param acceptEncoding  The accepted content encodings
+     * @param names           The names of the series to include, all the series when empty
+     * @param includePrefixes The prefixes of the names of the series to include
+     * @return the data
+     * @since 5.6.0
+     */
+    @Read(produces = {TextFormat.CONTENT_TYPE_004, TextFormat.CONTENT_TYPE_OPENMETRICS_100, ProtobufFormat.CONTENT_TYPE})
+    public HttpResponse<StreamedFile> stream(@Nullable @Header(HttpHeaders.ACCEPT) String accept,
+                                             @Nullable @Header(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                                             @Nullable @QueryValue("name[]") List<String> names,
+                                             @Nullable @QueryValue("include-prefix") List<String> includePrefixes) {
+        String contentType = chooseContentType(accept);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        Set<String> includedNames = CollectionUtils.isEmpty(names) ? Set.of() : new HashSet<>(names);
+        List<String> prefixes = CollectionUtils.isEmpty(includePrefixes) ? List.of() : includePrefixes;
+        ScrapeStream stream = new ScrapeStream(CHUNK_SIZE, MAX_CHUNKS, TIMEOUT);
+        scrapeExecutor.execute(() -> {
+            try {
+                scrape(stream.output(), contentType, gzip, includedNames, prefixes);
+            } catch (IOException | RuntimeException e) {
+                stream.fail(e);
+            }
+        });
+        MutableHttpResponse<StreamedFile> response = HttpResponse.ok(new StreamedFile(stream, MediaType.of(contentType)))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        return response;
+    }
+
+    /**
+     * Writes the scrape on the calling thread, from the cache when possible.
+     *
+     * @param output        The stream to write to, only closed once the complete scrape is written, so that the caller
+     *                      can end it as failed when an exception is thrown
+     * @param contentType   The content type of the scrape
+     * @param gzip          Whether to compress the scrape with gzip
+     * @param includedNames The names of the series to include, all the series when empty
+     * @param prefixes      The prefixes of the names of the series to include
+     * @throws IOException when the scrape could not be written
+     */
+    void scrape(OutputStream output, String contentType, boolean gzip, Set<String> includedNames, List<String> prefixes) throws IOException {
+        if (scrapeCache != null && includedNames.isEmpty() && prefixes.isEmpty()) {
+            byte[] body = scrapeCache.get(gzip ? contentType + ";" + GZIP : contentType,
+                    cached -> write(cached, gzip, contentType, includedNames, prefixes));
+            output.write(body);
+            output.close();
+        } else {
+            write(output, gzip, contentType, includedNames, prefixes);
+        }
+    }
+
+    private void write(OutputStream output, boolean gzip, String contentType, Set<String> includedNames, List<String> prefixes) throws IOException {
+        // not closed when the scrape fails, closing would end the output like a complete scrape
+        OutputStream encoded = gzip ? new GZIPOutputStream(output, GZIP_BUFFER_SIZE) : output;
+        if (ProtobufFormat.CONTENT_TYPE.equals(contentType)) {
+            ProtobufFormat.write(encoded, metricFamilySamples(includedNames, prefixes));
+            encoded.close();
+            return;
+        }
+        Writer writer = new OutputStreamWriter(encoded, StandardCharsets.UTF_8);
+        scrape(writer, contentType, includedNames, prefixes);
+        writer.close();
+    }
+
+    private void scrape(Writer writer, String contentType, Set<String> includedNames, List<String> prefixes) throws IOException {
+        if (prefixes.isEmpty()) {
+            if (includedNames.isEmpty()) {
+                prometheusMeterRegistry.scrape(writer, contentType);
+            } else {
+                prometheusMeterRegistry.scrape(writer, contentType, includedNames);
+            }
+            return;
+        }
+        TextFormat.writeFormat(contentType, writer, metricFamilySamples(includedNames, prefixes));
+    }
+
+    private Enumeration<MetricFamilySamples> metricFamilySamples(Set<String> includedNames, List<String> prefixes) {
+        CollectorRegistry registry = prometheusMeterRegistry.getPrometheusRegistry();
+        if (prefixes.isEmpty()) {
+            return includedNames.isEmpty() ? registry.metricFamilySamples() : registry.filteredMetricFamilySamples(includedNames);
+        }
+        return registry.filteredMetricFamilySamples(name -> includedNames.contains(name) || startsWithAny(name, prefixes));
+    }
+
+    private static boolean startsWithAny(String name, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param accept The value of the Accept header
+     * @return The content type of the scrape
+     */
+    static String chooseContentType(@Nullable String accept) {
+        return ProtobufFormat.isAccepted(accept) ? ProtobufFormat.CONTENT_TYPE : TextFormat.chooseContentType(accept);
+    }
+
+    /**
+     * @param acceptEncoding The value of the Accept-Encoding header
+     * @return Whether gzip is accepted, unless its quality is zero
+     */
+    static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            if (GZIP.equalsIgnoreCase(parameters[0].trim())) {
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        return !parameter.substring(2).matches("0(\\.0*)?");
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.prometheus.management;
+
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Internal;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.util.StringUtils;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the Prometheus scrape on a dedicated port, bound to its own small event loop group,
+ * so that scrapes are neither queued behind nor starved by the application requests.
+ * <p>
+ * The scrapes are written on a few threads of the listener, not on the blocking executor of the application,
+ * and the scrapes exceeding their queue are refused. The listener binds to the loopback interface unless a
+ * host is configured and, since it cannot authenticate the requests, refuses the scrapes while the endpoint
+ * is sensitive.
+ *
+ * @since 5.6.0
+ */
+@Context
+@Internal
+@Requires(property = PrometheusScrapeListener.PORT)
+@Requires(classes = ServerBootstrap.class)
+@Requires(beans = PrometheusEndpoint.class)
+final class PrometheusScrapeListener {
+
+    static final String PREFIX = "endpoints." + PrometheusEndpoint.ID + ".dedicated";
+    static final String PORT = PREFIX + ".port";
+
+    private static final String PATH = "/" + PrometheusEndpoint.ID;
+    private static final int MAX_REQUEST_LENGTH = 8 * 1024;
+    private static final int MAX_QUEUED_SCRAPES = 16;
+
+    private final PrometheusEndpoint endpoint;
+    private final EventLoopGroup eventLoopGroup;
+    private final ThreadPoolExecutor scrapeExecutor;
+    private final boolean sensitive;
+    private final Channel serverChannel;
+
+    /**
+     * @param endpoint      The Prometheus endpoint.
+     * @param port          The port to listen on.
+     * @param host          The host to bind to, the loopback interface when not set.
+     * @param threads       The number of threads of the event loop group.
+     * @param scrapeThreads The number of threads writing the scrapes.
+     * @param sensitive     Whether the endpoint is sensitive, in which case the scrapes are refused.
+     */
+    PrometheusScrapeListener(PrometheusEndpoint endpoint,
+                             @Value("${" + PORT + "}") int port,
+                             @Nullable @Property(name = PREFIX + ".host") String host,
+                             @Value("${" + PREFIX + ".threads:1}") int threads,
+                             @Value("${" + PREFIX + ".scrape-threads:2}") int scrapeThreads,
+                             @Value("${endpoints." + PrometheusEndpoint.ID + ".sensitive:${endpoints.all.sensitive:true}}") boolean sensitive) {
+        this.endpoint = endpoint;
+        this.sensitive = sensitive;
+        // not created by the EventLoopGroupFactory of the server, whose groups may be instrumented as the server workers
+        this.eventLoopGroup = new NioEventLoopGroup(threads, new DefaultThreadFactory("prometheus-scrape-loop", true));
+        this.scrapeExecutor = new ThreadPoolExecutor(scrapeThreads, scrapeThreads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(MAX_QUEUED_SCRAPES), new DefaultThreadFactory("prometheus-scrape", true));
+        scrapeExecutor.allowCoreThreadTimeOut(true);
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(eventLoopGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(MAX_REQUEST_LENGTH), new ScrapeHandler());
+                    }
+                });
+        try {
+            ChannelFuture bind = StringUtils.isEmpty(host) ? bootstrap.bind(InetAddress.getLoopbackAddress(), port) : bootstrap.bind(host, port);
+            this.serverChannel = bind.syncUninterruptibly().channel();
+        } catch (Throwable e) {
+            // the bind failure may be a checked exception rethrown by Netty
+            eventLoopGroup.shutdownGracefully();
+            scrapeExecutor.shutdownNow();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops listening and shuts the event loop group down.
+     */
+    @PreDestroy
+    void close() {
+        serverChannel.close().syncUninterruptibly();
+        eventLoopGroup.shutdownGracefully();
+        scrapeExecutor.shutdownNow();
+    }
+
+    /**
+     * Answers {@code GET /prometheus} with the same query parameters and negotiation as the endpoint.
+     */
+    private final class ScrapeHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            QueryStringDecoder query = new QueryStringDecoder(request.uri());
+            if (!PATH.equals(query.path())) {
+                respond(ctx, request, HttpResponseStatus.NOT_FOUND);
+                return;
+            }
+            if (!HttpMethod.GET.equals(request.method())) {
+                respond(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+                return;
+            }
+            if (sensitive) {
+                respond(ctx, request, HttpResponseStatus.UNAUTHORIZED);
+                return;
+            }
+            String contentType = PrometheusEndpoint.chooseContentType(request.headers().get(HttpHeaderNames.ACCEPT));
+            boolean gzip = PrometheusEndpoint.acceptsGzip(request.headers().get(HttpHeaderNames.ACCEPT_ENCODING));
+            Set<String> includedNames = new HashSet<>(query.parameters().getOrDefault("name[]", List.of()));
+            List<String> prefixes = query.parameters().getOrDefault("include-prefix", List.of());
+            boolean keepAlive = HttpUtil.isKeepAlive(request);
+
+            HttpResponse head = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            head.headers()
+                    .set(HttpHeaderNames.CONTENT_TYPE, contentType)
+                    .set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT + ", " + HttpHeaderNames.ACCEPT_ENCODING);
+            if (gzip) {
+                head.headers().set(HttpHeaderNames.CONTENT_ENCODING, PrometheusEndpoint.GZIP);
+            }
+            HttpUtil.setTransferEncodingChunked(head, true);
+            HttpUtil.setKeepAlive(head, keepAlive);
+
+            // the next request of the connection is read once the response is complete
+            ctx.channel().config().setAutoRead(false);
+            ResponseOutputStream output = new ResponseOutputStream(ctx.channel(), head, keepAlive);
+            try {
+                scrapeExecutor.execute(() -> {
+                    try {
+                        // only closes the output once the scrape is complete
+                        endpoint.scrape(output, contentType, gzip, includedNames, prefixes);
+                    } catch (IOException | RuntimeException e) {
+                        output.fail();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                ctx.channel().config().setAutoRead(true);
+                respond(ctx, request, HttpResponseStatus.SERVICE_UNAVAILABLE);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+
+        private void respond(ChannelHandlerContext ctx, FullHttpRequest request, HttpResponseStatus status) {
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+            HttpUtil.setContentLength(response, 0);
+            boolean keepAlive = HttpUtil.isKeepAlive(request);
+            HttpUtil.setKeepAlive(response, keepAlive);
+            ChannelFuture write = ctx.writeAndFlush(response);
+            if (!keepAlive) {
+                write.addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+    }
+
+    /**
+     * Writes the scrape to the channel as chunks of the response, waiting for each chunk to be
+     * flushed so that a slow client slows the scrape down instead of buffering it.
+     */
+    private static final class ResponseOutputStream extends OutputStream {
+
+        private final Channel channel;
+        private final HttpResponse head;
+        private final boolean keepAlive;
+        private ByteBuf buffer;
+        private boolean headWritten;
+        private boolean closed;
+
+        ResponseOutputStream(Channel channel, HttpResponse head, boolean keepAlive) {
+            this.channel = channel;
+            this.head = head;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer().writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                ByteBuf buf = buffer();
+                int n = Math.min(len, buf.writableBytes());
+                buf.writeBytes(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writeHead();
+            ChannelFuture last = channel.writeAndFlush(buffer == null ? new DefaultLastHttpContent() : new DefaultLastHttpContent(buffer));
+            buffer = null;
+            last.addListener(keepAlive ? (ChannelFutureListener) future -> channel.config().setAutoRead(true) : ChannelFutureListener.CLOSE);
+        }
+
+        /**
+         * Ends the response after a failed scrape: with an error status when nothing was sent yet,
+         * otherwise by closing the connection so that the client sees a truncated response.
+         */
+        void fail() {
+            closed = true;
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            }
+            if (headWritten) {
+                channel.close();
+            } else {
+                FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+                HttpUtil.setContentLength(response, 0);
+                channel.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        private ByteBuf buffer() throws IOException {
+            if (closed) {
+                throw new IOException("The Prometheus scrape response was closed");
+            }
+            if (buffer != null && buffer.isWritable()) {
+                return buffer;
+            }
+            if (buffer != null) {
+                writeHead();
+                ByteBuf full = buffer;
+                buffer = null;
+                await(channel.writeAndFlush(new DefaultHttpContent(full)));
+            }
+            buffer = channel.alloc().buffer(PrometheusEndpoint.CHUNK_SIZE, PrometheusEndpoint.CHUNK_SIZE);
+            return buffer;
+        }
+
+        private void writeHead() {
+            if (!headWritten) {
+                headWritten = true;
+                channel.write(head);
+            }
+        }
+
+        private static void await(ChannelFuture write) throws IOException {
+            if (!write.awaitUninterruptibly(PrometheusEndpoint.TIMEOUT.toMillis())) {
+                throw new IOException("Timed out writing the Prometheus scrape");
+            }
+            if (!write.isSuccess()) {
+                throw new IOException("Failed to write the Prometheus scrape", write.cause());
+            }
+        }
+    }
+}
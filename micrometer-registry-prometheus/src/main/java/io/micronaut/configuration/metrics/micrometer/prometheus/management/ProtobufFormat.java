@@ -0,0 +1,284 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.prometheus.management;
+
+import io.micronaut.core.annotation.Internal;
+import io.micronaut.core.annotation.Nullable;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Collector.MetricFamilySamples.Sample;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the metric families in the delimited protobuf exposition format, each
+ * {@code io.prometheus.client.MetricFamily} message being preceded by its length.
+ * <p>
+ * The messages are encoded by hand, so that no protobuf runtime is needed. Histograms are
+ * written with their classic buckets, the only ones the Prometheus simpleclient collects.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class ProtobufFormat {
+
+    /**
+     * The content type of the delimited protobuf exposition format.
+     */
+    static final String CONTENT_TYPE = "application/vnd.google.protobuf; proto=io.prometheus.client.MetricFamily; encoding=delimited";
+
+    private static final String MEDIA_TYPE = "application/vnd.google.protobuf";
+    private static final String PROTO = "proto=io.prometheus.client.MetricFamily";
+    private static final String DELIMITED = "encoding=delimited";
+    private static final String TOTAL = "_total";
+    private static final String CREATED = "_created";
+    private static final String COUNT = "_count";
+    private static final String SUM = "_sum";
+    private static final String BUCKET = "_bucket";
+    private static final String LE = "le";
+    private static final String QUANTILE = "quantile";
+
+    // io.prometheus.client.MetricType
+    private static final int TYPE_COUNTER = 0;
+    private static final int TYPE_GAUGE = 1;
+    private static final int TYPE_SUMMARY = 2;
+    private static final int TYPE_UNTYPED = 3;
+    private static final int TYPE_HISTOGRAM = 4;
+
+    private ProtobufFormat() {
+    }
+
+    /**
+     * @param accept The accepted content types
+     * @return Whether the delimited protobuf exposition format is accepted, unless its quality is zero
+     */
+    static boolean isAccepted(@Nullable String accept) {
+        if (accept == null) {
+            return false;
+        }
+        for (String range : accept.split(",")) {
+            String[] parameters = range.split(";");
+            if (!MEDIA_TYPE.equalsIgnoreCase(parameters[0].trim())) {
+                continue;
+            }
+            boolean proto = false;
+            boolean delimited = false;
+            boolean refused = false;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (PROTO.equals(parameter)) {
+                    proto = true;
+                } else if (DELIMITED.equals(parameter)) {
+                    delimited = true;
+                } else if (parameter.startsWith("q=")) {
+                    refused = parameter.substring(2).matches("0(\\.0*)?");
+                }
+            }
+            if (proto && delimited && !refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param output   The stream to write to
+     * @param families The metric families
+     * @throws IOException when the families could not be written
+     */
+    static void write(OutputStream output, Enumeration<MetricFamilySamples> families) throws IOException {
+        while (families.hasMoreElements()) {
+            Message family = family(families.nextElement());
+            Message length = new Message();
+            length.rawVarint(family.bytes.size());
+            length.bytes.writeTo(output);
+            family.bytes.writeTo(output);
+        }
+    }
+
+    private static Message family(MetricFamilySamples family) {
+        Message message = new Message();
+        switch (family.type) {
+            case COUNTER -> {
+                message.string(1, family.name.endsWith(TOTAL) ? family.name : family.name + TOTAL).varint(3, TYPE_COUNTER);
+                for (Sample sample : family.samples) {
+                    if (!sample.name.endsWith(CREATED)) {
+                        message.message(4, metric(sample, null).message(3, new Message().fixed64(1, sample.value)));
+                    }
+                }
+            }
+            case GAUGE -> {
+                message.string(1, family.name).varint(3, TYPE_GAUGE);
+                for (Sample sample : family.samples) {
+                    message.message(4, metric(sample, null).message(2, new Message().fixed64(1, sample.value)));
+                }
+            }
+            case SUMMARY -> {
+                message.string(1, family.name).varint(3, TYPE_SUMMARY);
+                for (Series series : series(family, QUANTILE)) {
+                    Message summary = series.totals();
+                    for (double[] quantile : series.points) {
+                        summary.message(3, new Message().fixed64(1, quantile[0]).fixed64(2, quantile[1]));
+                    }
+                    message.message(4, metric(series.sample, QUANTILE).message(4, summary));
+                }
+            }
+            case HISTOGRAM -> {
+                message.string(1, family.name).varint(3, TYPE_HISTOGRAM);
+                for (Series series : series(family, LE)) {
+                    Message histogram = series.totals();
+                    for (double[] bucket : series.points) {
+                        histogram.message(3, new Message().varint(1, (long) bucket[1]).fixed64(2, bucket[0]));
+                    }
+                    message.message(4, metric(series.sample, LE).message(7, histogram));
+                }
+            }
+            default -> {
+                message.string(1, family.name).varint(3, TYPE_UNTYPED);
+                for (Sample sample : family.samples) {
+                    message.message(4, metric(sample, null).message(5, new Message().fixed64(1, sample.value)));
+                }
+            }
+        }
+        if (family.help != null && !family.help.isEmpty()) {
+            message.string(2, family.help);
+        }
+        return message;
+    }
+
+    private static List<Series> series(MetricFamilySamples family, String pointLabel) {
+        Map<List<String>, Series> series = new LinkedHashMap<>();
+        for (Sample sample : family.samples) {
+            List<String> key = new ArrayList<>(sample.labelValues.size());
+            String point = null;
+            for (int i = 0; i < sample.labelNames.size(); i++) {
+                if (pointLabel.equals(sample.labelNames.get(i))) {
+                    point = sample.labelValues.get(i);
+                } else {
+                    key.add(sample.labelValues.get(i));
+                }
+            }
+            Series s = series.computeIfAbsent(key, k -> new Series(sample));
+            if (sample.name.endsWith(COUNT)) {
+                s.count = sample.value;
+            } else if (sample.name.endsWith(SUM)) {
+                s.sum = sample.value;
+            } else if (point != null && (sample.name.equals(family.name) || sample.name.endsWith(BUCKET))) {
+                s.points.add(new double[] {parseDouble(point), sample.value});
+            }
+        }
+        return new ArrayList<>(series.values());
+    }
+
+    private static Message metric(Sample sample, @Nullable String excludedLabel) {
+        Message metric = new Message();
+        for (int i = 0; i < sample.labelNames.size(); i++) {
+            String name = sample.labelNames.get(i);
+            if (!name.equals(excludedLabel)) {
+                metric.message(1, new Message().string(1, name).string(2, sample.labelValues.get(i)));
+            }
+        }
+        if (sample.timestampMs != null) {
+            metric.varint(6, sample.timestampMs);
+        }
+        return metric;
+    }
+
+    private static double parseDouble(String value) {
+        return switch (value) {
+            case "+Inf" -> Double.POSITIVE_INFINITY;
+            case "-Inf" -> Double.NEGATIVE_INFINITY;
+            case "NaN" -> Double.NaN;
+            default -> Double.parseDouble(value);
+        };
+    }
+
+    /**
+     * The samples of a summary or histogram sharing the same labels.
+     */
+    private static final class Series {
+
+        private final Sample sample;
+        private final List<double[]> points = new ArrayList<>();
+        private double count;
+        private double sum;
+
+        Series(Sample sample) {
+            this.sample = sample;
+        }
+
+        Message totals() {
+            return new Message().varint(1, (long) count).fixed64(2, sum);
+        }
+    }
+
+    /**
+     * A protobuf message being encoded.
+     */
+    private static final class Message {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Message varint(int field, long value) {
+            tag(field, 0);
+            rawVarint(value);
+            return this;
+        }
+
+        Message fixed64(int field, double value) {
+            tag(field, 1);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 0; i < Long.BYTES; i++) {
+                bytes.write((int) (bits >>> (8 * i)));
+            }
+            return this;
+        }
+
+        Message string(int field, String value) {
+            return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Message message(int field, Message message) {
+            return bytes(field, message.bytes.toByteArray());
+        }
+
+        private Message bytes(int field, byte[] value) {
+            tag(field, 2);
+            rawVarint(value.length);
+            bytes.writeBytes(value);
+            return this;
+        }
+
+        void rawVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        private void tag(int field, int wireType) {
+            rawVarint(field << 3 | wireType);
+        }
+    }
+}
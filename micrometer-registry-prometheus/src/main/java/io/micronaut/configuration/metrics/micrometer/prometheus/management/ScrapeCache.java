@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.prometheus.management;
+
+import io.micronaut.core.annotation.Internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps the rendered scrapes for a short time, so the scrapers polling the same instance
+ * share a single rendering per time to live.
+ * <p>
+ * A scrape requested while the same scrape is being rendered waits for that rendering
+ * instead of starting another one. A failed rendering is not kept, even when the render wrote
+ * part of the scrape before failing.
+ * <p>
+ * Unlike the streamed scrapes, whose memory is bounded by the chunks in flight, the whole body
+ * of each cached scrape is held in memory, once per key, until a newer rendering replaces it.
+ * The memory used therefore grows with the number of series, which is the price of rendering the
+ * scrape once per time to live.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class ScrapeCache {
+
+    private final long ttlNanos;
+    private final long timeoutNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttl     The time a rendered scrape is served for.
+     * @param timeout The maximum time to wait for a scrape rendered by another request.
+     */
+    ScrapeCache(Duration ttl, Duration timeout) {
+        this.ttlNanos = ttl.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * @param key    The key of the scrape, which must identify its format and encoding.
+     * @param render Writes the scrape when it is not cached or expired.
+     * @return The rendered scrape.
+     * @throws IOException when the scrape could not be rendered.
+     */
+    byte[] get(String key, Render render) throws IOException {
+        Entry created = new Entry();
+        Entry entry = entries.compute(key, (k, current) -> current == null || current.isExpired(System.nanoTime()) ? created : current);
+        if (entry != created) {
+            return entry.await(timeoutNanos);
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            render.write(output);
+            byte[] body = output.toByteArray();
+            entry.complete(body, System.nanoTime());
+            return body;
+        } catch (IOException | RuntimeException e) {
+            entries.remove(key, entry);
+            entry.body.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a scrape.
+     */
+    @FunctionalInterface
+    interface Render {
+
+        /**
+         * @param output The stream to write the scrape to, closed by the render.
+         * @throws IOException when the scrape could not be written.
+         */
+        void write(OutputStream output) throws IOException;
+    }
+
+    /**
+     * A scrape rendered or being rendered.
+     */
+    private final class Entry {
+
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private volatile long renderedAt;
+
+        void complete(byte[] rendered, long now) {
+            renderedAt = now;
+            body.complete(rendered);
+        }
+
+        boolean isExpired(long now) {
+            return body.isDone() && now - renderedAt >= ttlNanos;
+        }
+
+        byte[] await(long timeout) throws IOException {
+            try {
+                return body.get(timeout, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ioException ? ioException : new IOException("Prometheus scrape failed", e.getCause());
+            } catch (TimeoutException e) {
+                throw new IOException("Timed out waiting for the Prometheus scrape", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.prometheus.management;
+
+import io.micronaut.core.annotation.Internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pipe between a scrape written on one thread and the response body read on another.
+ * <p>
+ * The scrape is written into fixed size chunks handed over to the reader through a bounded
+ * queue, so the writer blocks while the client is slower than the scrape and the memory used
+ * does not depend on the number of series. The chunks read are recycled for the next writes.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class ScrapeStream extends InputStream {
+
+    private static final byte[] END = new byte[0];
+
+    private final int chunkSize;
+    private final long timeoutNanos;
+    private final BlockingQueue<byte[]> chunks;
+    private final BlockingQueue<byte[]> recycled;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private byte[] current;
+    private int position;
+    private int limit;
+
+    /**
+     * @param chunkSize The size of the chunks.
+     * @param maxChunks The maximum number of chunks written and not read yet.
+     * @param timeout   The maximum time the writer waits for the reader and conversely.
+     */
+    ScrapeStream(int chunkSize, int maxChunks, Duration timeout) {
+        this.chunkSize = chunkSize;
+        this.timeoutNanos = timeout.toNanos();
+        this.chunks = new ArrayBlockingQueue<>(maxChunks + 1);
+        this.recycled = new ArrayBlockingQueue<>(maxChunks);
+    }
+
+    /**
+     * @return The stream the scrape is written to, closed once the scrape is complete.
+     */
+    OutputStream output() {
+        return new ChunkOutputStream();
+    }
+
+    /**
+     * Ends the stream with an error, after the chunks already written.
+     *
+     * @param cause The cause of the failure.
+     */
+    void fail(Throwable cause) {
+        failure = cause instanceof IOException ioException ? ioException : new IOException("Prometheus scrape failed", cause);
+        chunks.offer(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!next()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!next()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : limit - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        chunks.clear();
+        recycled.clear();
+    }
+
+    private boolean next() throws IOException {
+        if (current == END) {
+            return false;
+        }
+        if (current != null && position < limit) {
+            return true;
+        }
+        if (current != null && current.length == chunkSize) {
+            recycled.offer(current);
+        }
+        // a failed scrape may not have been able to queue the end of the stream
+        current = failure != null && chunks.isEmpty() ? END : poll();
+        if (current == END) {
+            IOException e = failure;
+            if (e != null) {
+                throw e;
+            }
+            return false;
+        }
+        position = 0;
+        limit = current.length;
+        return true;
+    }
+
+    private byte[] poll() throws IOException {
+        try {
+            byte[] chunk = chunks.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+            if (chunk == null) {
+                throw new IOException("Timed out waiting for the Prometheus scrape");
+            }
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * The writer side, only used by the scraping thread.
+     */
+    private final class ChunkOutputStream extends OutputStream {
+
+        private byte[] buffer = new byte[chunkSize];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                hand();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    hand();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (count > 0) {
+                put(count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+                count = 0;
+            }
+            put(END);
+        }
+
+        private void hand() throws IOException {
+            put(buffer);
+            byte[] free = recycled.poll();
+            buffer = free == null ? new byte[chunkSize] : free;
+            count = 0;
+        }
+
+        private void put(byte[] chunk) throws IOException {
+            if (closed) {
+                throw new IOException("The Prometheus scrape response was closed");
+            }
+            try {
+                if (!chunks.offer(chunk, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    throw new IOException("Timed out writing the Prometheus scrape");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.prometheus.pushgateway;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.micronaut.core.annotation.Internal;
+import io.prometheus.client.exporter.common.TextFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pushes the metrics of a registry to the group of a Pushgateway, replacing the metrics
+ * previously pushed to the group.
+ *
+ * @since 5.6.0
+ */
+@Internal
+final class PushGatewayClient {
+
+    private static final Pattern PLAIN = Pattern.compile("[A-Za-z0-9_.~-]+");
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP = "gzip";
+
+    private final HttpClient httpClient;
+    private final URI groupUri;
+    private final boolean gzip;
+    private final Duration timeout;
+
+    /**
+     * @param url         The base URL of the Pushgateway.
+     * @param job         The job the metrics are pushed for.
+     * @param groupingKey The labels, besides the job, identifying the group.
+     * @param gzip        Whether the pushed metrics are compressed.
+     * @param timeout     The timeout of the connection and of the requests.
+     */
+    PushGatewayClient(URI url, String job, Map<String, String> groupingKey, boolean gzip, Duration timeout) {
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+        this.groupUri = groupUri(url, job, groupingKey);
+        this.gzip = gzip;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return The URL of the group the metrics are pushed to.
+     */
+    URI groupUri() {
+        return groupUri;
+    }
+
+    /**
+     * Replaces the metrics of the group by the current metrics of the registry.
+     *
+     * @param registry The registry to push.
+     * @throws IOException when the push failed.
+     */
+    void push(PrometheusMeterRegistry registry) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(gzip ? new GZIPOutputStream(body) : body, StandardCharsets.UTF_8)) {
+            registry.scrape(writer, TextFormat.CONTENT_TYPE_004);
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(groupUri)
+                .timeout(timeout)
+                .header(CONTENT_TYPE, TextFormat.CONTENT_TYPE_004)
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+        if (gzip) {
+            request.header(CONTENT_ENCODING, GZIP);
+        }
+        send(request.build());
+    }
+
+    /**
+     * Deletes the metrics of the group.
+     *
+     * @throws IOException when the deletion failed.
+     */
+    void delete() throws IOException {
+        send(HttpRequest.newBuilder(groupUri).timeout(timeout).DELETE().build());
+    }
+
+    private void send(HttpRequest request) throws IOException {
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException("Pushgateway " + groupUri + " responded with status " + response.statusCode() + ": " + response.body());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * @param url         The base URL of the Pushgateway.
+     * @param job         The job the metrics are pushed for.
+     * @param groupingKey The labels, besides the job, identifying the group.
+     * @return The URL of the group, the values that are not URL safe being base64 encoded.
+     */
+    static URI groupUri(URI url, String job, Map<String, String> groupingKey) {
+        String base = url.toString();
+        StringBuilder path = new StringBuilder(base.endsWith("/") ? base.substring(0, base.length() - 1) : base)
+                .append("/metrics");
+        appendLabel(path, "job", job);
+        groupingKey.forEach((name, value) -> appendLabel(path, name, value));
+        return URI.create(path.toString());
+    }
+
+    private static void appendLabel(StringBuilder path, String name, String value) {
+        if (PLAIN.matcher(value).matches()) {
+            path.append('/').append(name).append('/').append(value);
+        } else {
+            String encoded = Base64.getUrlEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+            path.append('/').append(name).append("@base64/").append(encoded.isEmpty() ? "=" : encoded);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.prometheus.pushgateway;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.annotation.Nullable;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static io.micronaut.configuration.metrics.micrometer.prometheus.PrometheusMeterRegistryFactory.PROMETHEUS_CONFIG;
+
+/**
+ * Configures the push of the Prometheus metrics to a Pushgateway, for the applications
+ * that do not live long enough to be scraped.
+ *
+ * @since 5.6.0
+ */
+@ConfigurationProperties(PushGatewayConfiguration.PREFIX)
+public final class PushGatewayConfiguration {
+
+    public static final String PREFIX = PROMETHEUS_CONFIG + ".pushgateway";
+    public static final String ENABLED = PREFIX + ".enabled";
+
+    private URI url = URI.create("http://localhost:9091");
+    private String job;
+    private Map<String, String> groupingKey = new LinkedHashMap<>();
+    private boolean commonTagsGroupingKey = true;
+    private Duration pushRate = Duration.ofMinutes(1);
+    private boolean pushOnShutdown = true;
+    private boolean deleteOnShutdown;
+    private boolean gzip = true;
+    private Duration timeout = Duration.ofSeconds(10);
+
+    /**
+     * @return the base URL of the Pushgateway
+     */
+    public URI getUrl() {
+        return url;
+    }
+
+    /**
+     * Sets the base URL of the Pushgateway. Default: {@code http://localhost:9091}.
+     *
+     * @param url the base URL of the Pushgateway
+     */
+    public void setUrl(URI url) {
+        this.url = url;
+    }
+
+    /**
+     * @return the job the metrics are pushed for
+     */
+    @Nullable
+    public String getJob() {
+        return job;
+    }
+
+    /**
+     * Sets the job the metrics are pushed for. Default: the name of the application.
+     *
+     * @param job the job the metrics are pushed for
+     */
+    public void setJob(@Nullable String job) {
+        this.job = job;
+    }
+
+    /**
+     * @return the labels, besides the job, identifying the pushed group of metrics
+     */
+    public Map<String, String> getGroupingKey() {
+        return groupingKey;
+    }
+
+    /**
+     * Sets the labels, besides the job, identifying the pushed group of metrics. They take
+     * precedence over the common tags.
+     *
+     * @param groupingKey the labels identifying the pushed group of metrics
+     */
+    public void setGroupingKey(Map<String, String> groupingKey) {
+        this.groupingKey = groupingKey;
+    }
+
+    /**
+     * @return whether the common tags are part of the grouping key
+     */
+    public boolean isCommonTagsGroupingKey() {
+        return commonTagsGroupingKey;
+    }
+
+    /**
+     * Sets whether the common tags ({@code micronaut.metrics.tags}) are part of the grouping key,
+     * so that the instances of a job do not replace each other's metrics. Default: {@code true}.
+     *
+     * @param commonTagsGroupingKey whether the common tags are part of the grouping key
+     */
+    public void setCommonTagsGroupingKey(boolean commonTagsGroupingKey) {
+        this.commonTagsGroupingKey = commonTagsGroupingKey;
+    }
+
+    /**
+     * @return how often the metrics are pushed
+     */
+    public Duration getPushRate() {
+        return pushRate;
+    }
+
+    /**
+     * Sets how often the metrics are pushed. Default: {@code PT1M} (1 min).
+     *
+     * @param pushRate how often the metrics are pushed
+     */
+    public void setPushRate(Duration pushRate) {
+        this.pushRate = pushRate;
+    }
+
+    /**
+     * @return whether the metrics are pushed when the application stops
+     */
+    public boolean isPushOnShutdown() {
+        return pushOnShutdown;
+    }
+
+    /**
+     * Sets whether the metrics are pushed a last time when the application stops. Default: {@code true}.
+     *
+     * @param pushOnShutdown whether the metrics are pushed when the application stops
+     */
+    public void setPushOnShutdown(boolean pushOnShutdown) {
+        this.pushOnShutdown = pushOnShutdown;
+    }
+
+    /**
+     * @return whether the pushed metrics are deleted when the application stops
+     */
+    public boolean isDeleteOnShutdown() {
+        return deleteOnShutdown;
+    }
+
+    /**
+     * Sets whether the pushed metrics are deleted from the Pushgateway when the application stops,
+     * after the last push if any. Default: {@code false}.
+     *
+     * @param deleteOnShutdown whether the pushed metrics are deleted when the application stops
+     */
+    public void setDeleteOnShutdown(boolean deleteOnShutdown) {
+        this.deleteOnShutdown = deleteOnShutdown;
+    }
+
+    /**
+     * @return whether the pushed metrics are compressed
+     */
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Sets whether the pushed metrics are compressed with gzip. Default: {@code true}.
+     *
+     * @param gzip whether the pushed metrics are compressed
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return the timeout of the requests to the Pushgateway
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the timeout of the connection and of the requests to the Pushgateway. Default: {@code PT10S}.
+     *
+     * @param timeout the timeout of the requests to the Pushgateway
+     */
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+}
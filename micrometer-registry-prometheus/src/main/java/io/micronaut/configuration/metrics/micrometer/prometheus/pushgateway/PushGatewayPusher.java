@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017-2024 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.configuration.metrics.micrometer.prometheus.pushgateway;
+
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.micronaut.configuration.metrics.micrometer.ExportConfigurationProperties;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.annotation.Internal;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.util.StringUtils;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.TaskScheduler;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Pushes the Prometheus metrics to the Pushgateway periodically and when the application stops.
+ *
+ * @since 5.6.0
+ */
+@Context
+@Internal
+@Requires(property = PushGatewayConfiguration.ENABLED, value = StringUtils.TRUE, defaultValue = StringUtils.FALSE)
+@Requires(beans = PrometheusMeterRegistry.class)
+final class PushGatewayPusher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PushGatewayPusher.class);
+    private static final String JOB = "job";
+    private static final String DEFAULT_JOB = "micronaut";
+
+    private final PrometheusMeterRegistry registry;
+    private final PushGatewayConfiguration configuration;
+    private final PushGatewayClient client;
+    private final ScheduledFuture<?> schedule;
+
+    /**
+     * @param registry            The registry to push.
+     * @param configuration       The Pushgateway configuration.
+     * @param exportConfiguration The export configuration, holding the common tags.
+     * @param taskScheduler       The scheduler of the periodic pushes.
+     * @param applicationName     The name of the application, the default job.
+     */
+    PushGatewayPusher(PrometheusMeterRegistry registry,
+                      PushGatewayConfiguration configuration,
+                      ExportConfigurationProperties exportConfiguration,
+                      @Named(TaskExecutors.SCHEDULED) TaskScheduler taskScheduler,
+                      @Nullable @Property(name = "micronaut.application.name") String applicationName) {
+        this.registry = registry;
+        this.configuration = configuration;
+        String job = configuration.getJob() != null ? configuration.getJob()
+                : applicationName != null ? applicationName : DEFAULT_JOB;
+        this.client = new PushGatewayClient(configuration.getUrl(), job, groupingKey(registry, configuration, exportConfiguration),
+                configuration.isGzip(), configuration.getTimeout());
+        this.schedule = taskScheduler.scheduleAtFixedRate(configuration.getPushRate(), configuration.getPushRate(), this::push);
+    }
+
+    /**
+     * Stops the periodic pushes, then pushes or deletes the metrics a last time as configured.
+     */
+    @PreDestroy
+    void close() {
+        schedule.cancel(false);
+        if (configuration.isPushOnShutdown()) {
+            push();
+        }
+        if (configuration.isDeleteOnShutdown()) {
+            try {
+                client.delete();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to delete the metrics from the Pushgateway {}", client.groupUri(), e);
+            }
+        }
+    }
+
+    private void push() {
+        try {
+            client.push(registry);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to push the metrics to the Pushgateway {}", client.groupUri(), e);
+        }
+    }
+
+    private static Map<String, String> groupingKey(PrometheusMeterRegistry registry,
+                                                   PushGatewayConfiguration configuration,
+                                                   ExportConfigurationProperties exportConfiguration) {
+        Map<String, String> groupingKey = new LinkedHashMap<>();
+        if (configuration.isCommonTagsGroupingKey()) {
+            // the labels of the group must be named like the labels of the pushed series
+            NamingConvention namingConvention = registry.config().namingConvention();
+            Properties tags = exportConfiguration.getTags();
+            for (String key : new TreeSet<>(tags.stringPropertyNames())) {
+                groupingKey.put(namingConvention.tagKey(key), tags.getProperty(key));
+            }
+        }
+        groupingKey.putAll(configuration.getGroupingKey());
+        groupingKey.remove(JOB);
+        return groupingKey;
+    }
+}
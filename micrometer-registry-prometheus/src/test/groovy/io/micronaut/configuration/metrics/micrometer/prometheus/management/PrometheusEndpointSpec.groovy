@@ -1,12 +1,27 @@
 package io.micronaut.configuration.metrics.micrometer.prometheus.management
 
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.prometheus.PrometheusMeterRegistry
 import io.micronaut.context.ApplicationContext
+import io.micronaut.core.io.socket.SocketUtils
+import io.micronaut.http.HttpHeaders
+import io.micronaut.http.HttpRequest
+import io.micronaut.http.HttpResponse
 import io.micronaut.http.client.HttpClient
 import io.micronaut.runtime.server.EmbeddedServer
+import io.netty.channel.EventLoopGroup
+import io.prometheus.client.Collector
+import io.prometheus.client.CollectorRegistry
 import spock.lang.AutoCleanup
 import spock.lang.Ignore
 import spock.lang.Shared
 import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.zip.GZIPInputStream
 
 class PrometheusEndpointSpec extends Specification {
 
@@ -26,6 +41,564 @@ class PrometheusEndpointSpec extends Specification {
         client.toBlocking().retrieve('/prometheus').contains('jvm_memory_used')
     }
 
+    void "test prometheus scrape larger than the stream chunks"() {
+        given:
+        MeterRegistry registry = embeddedServer.applicationContext.getBean(MeterRegistry)
+        5000.times { registry.counter('streamed.scrape', 'number', it.toString()).increment() }
+
+        when:
+        HttpResponse<String> response = client.toBlocking().exchange('/prometheus', String)
+
+        then:
+        response.contentType.get().toString().startsWith('text/plain')
+        response.body().contains('jvm_memory_used')
+        response.body().findAll(~/streamed_scrape_total\{/).size() == 5000
+
+        cleanup:
+        registry.find('streamed.scrape').counters().each { registry.remove(it) }
+    }
+
+    void "test prometheus scrape in the OpenMetrics format"() {
+        when:
+        HttpResponse<String> response = client.toBlocking().exchange(HttpRequest.GET('/prometheus')
+                .header(HttpHeaders.ACCEPT, 'application/openmetrics-text;version=1.0.0,text/plain;version=0.0.4;q=0.5,*/*;q=0.1'), String)
+
+        then:
+        response.contentType.get().toString().startsWith('application/openmetrics-text')
+        response.body().contains('jvm_memory_used')
+        response.body().endsWith('# EOF\n')
+    }
+
+    void "test prometheus scrape in the delimited protobuf format"() {
+        given:
+        MeterRegistry registry = embeddedServer.applicationContext.getBean(MeterRegistry)
+        registry.counter('protobuf.scrape', 'kind', 'test').increment(3)
+
+        when:
+        HttpResponse<byte[]> response = client.toBlocking().exchange(HttpRequest.GET('/prometheus?include-prefix=protobuf_')
+                .header(HttpHeaders.ACCEPT, 'application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0.7,text/plain;version=0.0.4;q=0.3'), byte[])
+        List<Map<Integer, List<Object>>> families = readDelimited(response.body())
+
+        then:
+        response.contentType.get().toString().startsWith('application/vnd.google.protobuf')
+        families.size() == 1
+        new String(families[0][1][0] as byte[]) == 'protobuf_scrape_total'
+        families[0][3][0] == 0L
+
+        when:
+        Map<Integer, List<Object>> metric = readMessage(families[0][4][0] as byte[])
+        Map<Integer, List<Object>> label = readMessage(metric[1][0] as byte[])
+        Map<Integer, List<Object>> counter = readMessage(metric[3][0] as byte[])
+
+        then:
+        new String(label[1][0] as byte[]) == 'kind'
+        new String(label[2][0] as byte[]) == 'test'
+        Double.longBitsToDouble(counter[1][0] as long) == 3d
+
+        cleanup:
+        registry.remove(registry.get('protobuf.scrape').counter())
+    }
+
+    void "test prometheus scrape compressed with gzip"() {
+        given:
+        java.net.http.HttpClient httpClient = java.net.http.HttpClient.newHttpClient()
+
+        when:
+        java.net.http.HttpResponse<byte[]> response = httpClient.send(java.net.http.HttpRequest.newBuilder(embeddedServer.URI.resolve('/prometheus'))
+                .header(HttpHeaders.ACCEPT_ENCODING, 'gzip')
+                .build(), java.net.http.HttpResponse.BodyHandlers.ofByteArray())
+
+        then:
+        response.statusCode() == 200
+        response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).get() == 'gzip'
+        new GZIPInputStream(new ByteArrayInputStream(response.body())).text.contains('jvm_memory_used')
+    }
+
+    void "test prometheus scrape filtered by name"() {
+        when:
+        String result = client.toBlocking().retrieve('/prometheus?name%5B%5D=jvm_threads_live_threads&name%5B%5D=jvm_threads_peak_threads')
+
+        then:
+        result.contains('jvm_threads_live_threads')
+        result.contains('jvm_threads_peak_threads')
+        !result.contains('jvm_memory_used')
+    }
+
+    void "test prometheus scrape filtered by name prefix"() {
+        when:
+        String result = client.toBlocking().retrieve('/prometheus?include-prefix=jvm_memory_&name%5B%5D=jvm_threads_live_threads')
+
+        then:
+        result.contains('jvm_memory_used_bytes')
+        result.contains('jvm_memory_max_bytes')
+        result.contains('jvm_threads_live_threads')
+        !result.contains('jvm_threads_peak_threads')
+        !result.contains('jvm_gc_')
+    }
+
+    void "test prometheus scrape served on a dedicated port"() {
+        given:
+        int port = SocketUtils.findAvailableTcpPort()
+        EmbeddedServer server = ApplicationContext.run(EmbeddedServer, [
+                'endpoints.prometheus.sensitive'     : false,
+                'endpoints.prometheus.dedicated.port': port
+        ])
+        java.net.http.HttpClient httpClient = java.net.http.HttpClient.newHttpClient()
+        URI dedicated = URI.create("http://127.0.0.1:$port")
+
+        when:
+        java.net.http.HttpResponse<String> scrape = httpClient.send(java.net.http.HttpRequest.newBuilder(dedicated.resolve('/prometheus?include-prefix=jvm_memory_')).build(),
+                java.net.http.HttpResponse.BodyHandlers.ofString())
+        java.net.http.HttpResponse<byte[]> compressed = httpClient.send(java.net.http.HttpRequest.newBuilder(dedicated.resolve('/prometheus'))
+                .header(HttpHeaders.ACCEPT_ENCODING, 'gzip')
+                .build(), java.net.http.HttpResponse.BodyHandlers.ofByteArray())
+        java.net.http.HttpResponse<String> notFound = httpClient.send(java.net.http.HttpRequest.newBuilder(dedicated.resolve('/health')).build(),
+                java.net.http.HttpResponse.BodyHandlers.ofString())
+
+        then:
+        server.applicationContext.containsBean(PrometheusScrapeListener)
+        !embeddedServer.applicationContext.containsBean(PrometheusScrapeListener)
+        scrape.statusCode() == 200
+        scrape.headers().firstValue(HttpHeaders.CONTENT_TYPE).get().startsWith('text/plain')
+        scrape.body().contains('jvm_memory_used_bytes')
+        !scrape.body().contains('jvm_threads_')
+        compressed.statusCode() == 200
+        new GZIPInputStream(new ByteArrayInputStream(compressed.body())).text.contains('jvm_threads_live_threads')
+        notFound.statusCode() == 404
+
+        cleanup:
+        server.close()
+    }
+
+    void "test the delimited protobuf format is accepted unless its quality is zero"() {
+        expect:
+        ProtobufFormat.isAccepted(accept) == accepted
+
+        where:
+        accept                                                                                                        | accepted
+        null                                                                                                          | false
+        'text/plain;version=0.0.4'                                                                                    | false
+        ProtobufFormat.CONTENT_TYPE                                                                                   | true
+        'application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0.7'            | true
+        'application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0'              | false
+        'application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=text'                       | false
+        'text/plain;q=0.5,application/vnd.google.protobuf;encoding=delimited;proto=io.prometheus.client.MetricFamily' | true
+    }
+
+    void "test summaries are written in the delimited protobuf format"() {
+        given:
+        List<String> labels = ['uri']
+        Collector.MetricFamilySamples family = new Collector.MetricFamilySamples('latency', Collector.Type.SUMMARY, 'The latency', [
+                new Collector.MetricFamilySamples.Sample('latency', ['uri', 'quantile'], ['/a', '0.5'], 1.5d),
+                new Collector.MetricFamilySamples.Sample('latency', ['uri', 'quantile'], ['/a', '0.99'], 2.5d),
+                new Collector.MetricFamilySamples.Sample('latency_count', labels, ['/a'], 10d),
+                new Collector.MetricFamilySamples.Sample('latency_sum', labels, ['/a'], 12.5d)
+        ])
+
+        when:
+        Map<Integer, List<Object>> written = writeProtobuf(family)
+        Map<Integer, List<Object>> metric = readMessage(written[4][0] as byte[])
+        Map<Integer, List<Object>> summary = readMessage(metric[4][0] as byte[])
+        List<Map<Integer, List<Object>>> quantiles = summary[3].collect { readMessage(it as byte[]) }
+
+        then:
+        new String(written[1][0] as byte[]) == 'latency'
+        new String(written[2][0] as byte[]) == 'The latency'
+        written[3][0] == 2L
+        written[4].size() == 1
+        metric[1].size() == 1
+        new String(readMessage(metric[1][0] as byte[])[2][0] as byte[]) == '/a'
+        summary[1][0] == 10L
+        doubleValue(summary[2][0]) == 12.5d
+        quantiles.collect { [doubleValue(it[1][0]), doubleValue(it[2][0])] } == [[0.5d, 1.5d], [0.99d, 2.5d]]
+    }
+
+    void "test histograms are written in the delimited protobuf format"() {
+        given:
+        Collector.MetricFamilySamples family = new Collector.MetricFamilySamples('size', Collector.Type.HISTOGRAM, 'The size', [
+                new Collector.MetricFamilySamples.Sample('size_bucket', ['le'], ['1.0'], 2d),
+                new Collector.MetricFamilySamples.Sample('size_bucket', ['le'], ['10.0'], 4d),
+                new Collector.MetricFamilySamples.Sample('size_bucket', ['le'], ['+Inf'], 5d),
+                new Collector.MetricFamilySamples.Sample('size_count', [], [], 5d),
+                new Collector.MetricFamilySamples.Sample('size_sum', [], [], 17d),
+                new Collector.MetricFamilySamples.Sample('size_created', [], [], 1000d)
+        ])
+
+        when:
+        Map<Integer, List<Object>> written = writeProtobuf(family)
+        Map<Integer, List<Object>> metric = readMessage(written[4][0] as byte[])
+        Map<Integer, List<Object>> histogram = readMessage(metric[7][0] as byte[])
+        List<Map<Integer, List<Object>>> buckets = histogram[3].collect { readMessage(it as byte[]) }
+
+        then:
+        new String(written[1][0] as byte[]) == 'size'
+        written[3][0] == 4L
+        written[4].size() == 1
+        !metric[1]
+        histogram[1][0] == 5L
+        doubleValue(histogram[2][0]) == 17d
+        buckets.collect { [it[1][0], doubleValue(it[2][0])] } == [[2L, 1d], [4L, 10d], [5L, Double.POSITIVE_INFINITY]]
+    }
+
+    void "test gauges and untyped metrics are written in the delimited protobuf format"() {
+        given:
+        Collector.MetricFamilySamples gauge = new Collector.MetricFamilySamples('temperature', Collector.Type.GAUGE, 'The temperature', [
+                new Collector.MetricFamilySamples.Sample('temperature', ['room'], ['kitchen'], 21.5d)
+        ])
+        Collector.MetricFamilySamples untyped = new Collector.MetricFamilySamples('raw', Collector.Type.UNKNOWN, '', [
+                new Collector.MetricFamilySamples.Sample('raw', [], [], 7d)
+        ])
+
+        when:
+        ByteArrayOutputStream output = new ByteArrayOutputStream()
+        ProtobufFormat.write(output, Collections.enumeration([gauge, untyped]))
+        List<Map<Integer, List<Object>>> families = readDelimited(output.toByteArray())
+        Map<Integer, List<Object>> gaugeMetric = readMessage(families[0][4][0] as byte[])
+        Map<Integer, List<Object>> untypedMetric = readMessage(families[1][4][0] as byte[])
+
+        then:
+        families.size() == 2
+        new String(families[0][1][0] as byte[]) == 'temperature'
+        families[0][3][0] == 1L
+        new String(readMessage(gaugeMetric[1][0] as byte[])[1][0] as byte[]) == 'room'
+        doubleValue(readMessage(gaugeMetric[2][0] as byte[])[1][0]) == 21.5d
+
+        new String(families[1][1][0] as byte[]) == 'raw'
+        !families[1][2]
+        families[1][3][0] == 3L
+        doubleValue(readMessage(untypedMetric[5][0] as byte[])[1][0]) == 7d
+    }
+
+    void "test the dedicated port refuses the scrapes while the endpoint is sensitive"() {
+        given:
+        int port = SocketUtils.findAvailableTcpPort()
+        ApplicationContext context = ApplicationContext.run(['endpoints.prometheus.dedicated.port': port])
+
+        when:
+        java.net.http.HttpResponse<String> response = java.net.http.HttpClient.newHttpClient().send(
+                java.net.http.HttpRequest.newBuilder(URI.create("http://127.0.0.1:$port/prometheus")).build(),
+                java.net.http.HttpResponse.BodyHandlers.ofString())
+
+        then:
+        response.statusCode() == 401
+
+        cleanup:
+        context.close()
+    }
+
+    void "test the dedicated port does not end a failed scrape like a complete one"() {
+        given:
+        int port = SocketUtils.findAvailableTcpPort()
+        ApplicationContext context = ApplicationContext.run([
+                'endpoints.prometheus.sensitive'     : false,
+                'endpoints.prometheus.dedicated.port': port
+        ])
+        failingCollector().register(context.getBean(PrometheusMeterRegistry).prometheusRegistry)
+
+        when:
+        java.net.http.HttpResponse<String> response = null
+        try {
+            response = java.net.http.HttpClient.newHttpClient().send(
+                    java.net.http.HttpRequest.newBuilder(URI.create("http://127.0.0.1:$port/prometheus")).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString())
+        } catch (IOException ignored) {
+            // the connection was closed before the end of the chunked body
+        }
+
+        then:
+        response == null || response.statusCode() != 200
+
+        cleanup:
+        context.close()
+    }
+
+    void "test the dedicated event loop group is shut down when the port cannot be bound"() {
+        given:
+        ServerSocket taken = new ServerSocket(0, 50, InetAddress.loopbackAddress)
+
+        when:
+        ApplicationContext.run([
+                'endpoints.prometheus.sensitive'     : false,
+                'endpoints.prometheus.dedicated.port': taken.localPort
+        ])
+
+        then:
+        thrown(Exception)
+        new PollingConditions(timeout: 20).eventually {
+            assert !Thread.allStackTraces.keySet().any { it.name.startsWith('prometheus-scrape-loop') && it.alive }
+        }
+
+        cleanup:
+        taken.close()
+    }
+
+    void "test the dedicated event loop group is not counted in the worker queue metrics"() {
+        given:
+        int port = SocketUtils.findAvailableTcpPort()
+        ApplicationContext context = ApplicationContext.run([
+                'endpoints.prometheus.sensitive'                : false,
+                'endpoints.prometheus.dedicated.port'           : port,
+                'micronaut.metrics.binders.netty.queues.enabled': true
+        ])
+        MeterRegistry registry = context.getBean(MeterRegistry)
+        int workers = context.getBean(EventLoopGroup).iterator().size()
+
+        when:
+        java.net.http.HttpResponse<String> response = java.net.http.HttpClient.newHttpClient().send(
+                java.net.http.HttpRequest.newBuilder(URI.create("http://127.0.0.1:$port/prometheus")).build(),
+                java.net.http.HttpResponse.BodyHandlers.ofString())
+
+        then:
+        response.statusCode() == 200
+        registry.find('netty.queue.size').tag('group', 'worker').gauges().size() == workers
+
+        cleanup:
+        context.close()
+    }
+
+    void "test gzip is accepted unless its quality is zero"() {
+        expect:
+        PrometheusEndpoint.acceptsGzip(acceptEncoding) == accepted
+
+        where:
+        acceptEncoding          | accepted
+        null                    | false
+        'identity'              | false
+        'gzip'                  | true
+        'deflate, GZIP;q=0.5'   | true
+        'br, gzip;q=0'          | false
+        'gzip;q=0.000'          | false
+    }
+
+    void "test prometheus scrape served from the cache"() {
+        given:
+        EmbeddedServer server = ApplicationContext.run(EmbeddedServer, [
+                'endpoints.prometheus.sensitive': false,
+                'endpoints.prometheus.cache-ttl': '1h'
+        ])
+        HttpClient cachedClient = server.applicationContext.createBean(HttpClient, server.URL)
+        MeterRegistry registry = server.applicationContext.getBean(MeterRegistry)
+
+        when:
+        String first = cachedClient.toBlocking().retrieve('/prometheus')
+        registry.counter('cached.scrape').increment()
+        String second = cachedClient.toBlocking().retrieve('/prometheus')
+        String filtered = cachedClient.toBlocking().retrieve('/prometheus?name%5B%5D=cached_scrape_total')
+
+        then:
+        first.contains('jvm_memory_used')
+        second == first
+        !second.contains('cached_scrape_total')
+        filtered.contains('cached_scrape_total')
+
+        cleanup:
+        cachedClient.close()
+        server.close()
+    }
+
+    void "test concurrent scrapes share the rendering in progress"() {
+        given:
+        ScrapeCache cache = new ScrapeCache(Duration.ofHours(1), Duration.ofSeconds(5))
+        AtomicInteger renderings = new AtomicInteger()
+        CountDownLatch rendering = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        ScrapeCache.Render render = { OutputStream output ->
+            renderings.incrementAndGet()
+            rendering.countDown()
+            release.await()
+            output.write('scrape'.bytes)
+            output.close()
+        }
+
+        when:
+        byte[] rendered = null
+        byte[] waiting = null
+        Thread first = Thread.start { rendered = cache.get('text', render) }
+        rendering.await()
+        Thread second = Thread.start { waiting = cache.get('text', render) }
+        Thread.sleep(100)
+        release.countDown()
+        [first, second]*.join()
+
+        then:
+        new String(rendered) == 'scrape'
+        new String(waiting) == 'scrape'
+        new String(cache.get('text', render)) == 'scrape'
+        renderings.get() == 1
+    }
+
+    void "test a failed scrape is not cached"() {
+        given:
+        ScrapeCache cache = new ScrapeCache(Duration.ofHours(1), Duration.ofSeconds(5))
+
+        when:
+        cache.get('text', { throw new IOException('boom') } as ScrapeCache.Render)
+
+        then:
+        thrown(IOException)
+
+        when:
+        byte[] body = cache.get('text', { it.write('scrape'.bytes) } as ScrapeCache.Render)
+
+        then:
+        new String(body) == 'scrape'
+    }
+
+    void "test prometheus stream reports a failed scrape"() {
+        given:
+        ScrapeStream stream = new ScrapeStream(8, 1, Duration.ofSeconds(5))
+        OutputStream output = stream.output()
+
+        when:
+        Thread.start {
+            output.write('abcdefghij'.bytes)
+            stream.fail(new IllegalStateException('boom'))
+        }
+        stream.readAllBytes()
+
+        then:
+        IOException e = thrown()
+        e.cause instanceof IllegalStateException
+    }
+
+    void "test a scrape failing after its first chunks does not end like a complete scrape"() {
+        given:
+        EmbeddedServer server = ApplicationContext.run(EmbeddedServer, ['endpoints.prometheus.sensitive': false])
+        failingCollector().register(server.applicationContext.getBean(PrometheusMeterRegistry).prometheusRegistry)
+        PrometheusEndpoint endpoint = server.applicationContext.getBean(PrometheusEndpoint)
+
+        when:
+        endpoint.stream(null, null, null, null).body().inputStream.readAllBytes()
+
+        then:
+        IOException e = thrown()
+        e.cause instanceof IllegalStateException
+
+        when:
+        java.net.http.HttpResponse<String> response = null
+        try {
+            response = java.net.http.HttpClient.newHttpClient().send(
+                    java.net.http.HttpRequest.newBuilder(server.URI.resolve('/prometheus')).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString())
+        } catch (IOException ignored) {
+            // the connection was closed before the end of the chunked body
+        }
+
+        then:
+        response == null || response.statusCode() != 200
+
+        cleanup:
+        server.close()
+    }
+
+    void "test a scrape failing after its first chunks is not cached"() {
+        given:
+        ApplicationContext context = ApplicationContext.run([
+                'endpoints.prometheus.sensitive': false,
+                'endpoints.prometheus.cache-ttl': '1h'
+        ])
+        CollectorRegistry registry = context.getBean(PrometheusMeterRegistry).prometheusRegistry
+        Collector collector = failingCollector().register(registry)
+        PrometheusEndpoint endpoint = context.getBean(PrometheusEndpoint)
+
+        when:
+        endpoint.stream(null, null, null, null).body().inputStream.readAllBytes()
+
+        then:
+        thrown(IOException)
+
+        when:
+        registry.unregister(collector)
+        String body = new String(endpoint.stream(null, null, null, null).body().inputStream.readAllBytes())
+
+        then:
+        body.contains('jvm_memory_used')
+        !body.contains('failing_scrape')
+
+        cleanup:
+        context.close()
+    }
+
+    private static Collector failingCollector() {
+        List<Collector.MetricFamilySamples.Sample> samples = new AbstractList<Collector.MetricFamilySamples.Sample>() {
+            @Override
+            int size() {
+                10_000
+            }
+
+            @Override
+            Collector.MetricFamilySamples.Sample get(int index) {
+                if (index == 5_000) {
+                    throw new IllegalStateException('boom')
+                }
+                new Collector.MetricFamilySamples.Sample('failing_scrape', ['number'], [index.toString()], index)
+            }
+        }
+        new Collector() {
+            @Override
+            List<Collector.MetricFamilySamples> collect() {
+                [new Collector.MetricFamilySamples('failing_scrape', Collector.Type.GAUGE, 'Fails after its first samples', samples)]
+            }
+        }
+    }
+
+    private static Map<Integer, List<Object>> writeProtobuf(Collector.MetricFamilySamples family) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream()
+        ProtobufFormat.write(output, Collections.enumeration([family]))
+        List<Map<Integer, List<Object>>> families = readDelimited(output.toByteArray())
+        assert families.size() == 1
+        families[0]
+    }
+
+    private static double doubleValue(Object fixed64) {
+        Double.longBitsToDouble(fixed64 as long)
+    }
+
+    private static List<Map<Integer, List<Object>>> readDelimited(byte[] bytes) {
+        ByteArrayInputStream input = new ByteArrayInputStream(bytes)
+        List<Map<Integer, List<Object>>> messages = []
+        while (input.available() > 0) {
+            messages << readMessage(input.readNBytes((int) readVarint(input)))
+        }
+        messages
+    }
+
+    private static Map<Integer, List<Object>> readMessage(byte[] bytes) {
+        ByteArrayInputStream input = new ByteArrayInputStream(bytes)
+        Map<Integer, List<Object>> fields = [:].withDefault { [] }
+        while (input.available() > 0) {
+            long tag = readVarint(input)
+            int field = (int) (tag >>> 3)
+            switch ((int) (tag & 7)) {
+                case 0:
+                    fields[field] << readVarint(input)
+                    break
+                case 1:
+                    long bits = 0
+                    8.times { bits |= ((long) input.read()) << (8 * it) }
+                    fields[field] << bits
+                    break
+                case 2:
+                    fields[field] << input.readNBytes((int) readVarint(input))
+                    break
+                default:
+                    throw new IllegalStateException("Unexpected wire type in tag $tag")
+            }
+        }
+        fields
+    }
+
+    private static long readVarint(InputStream input) {
+        long value = 0
+        int shift = 0
+        int b
+        while (((b = input.read()) & 0x80) != 0) {
+            value |= ((long) (b & 0x7F)) << shift
+            shift += 7
+        }
+        value | (((long) b) << shift)
+    }
+
     @Ignore
     void "test prometheus scrape no descriptions"() {
         given:
@@ -0,0 +1,115 @@
+package io.micronaut.configuration.metrics.micrometer.prometheus.pushgateway
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import io.micrometer.core.instrument.MeterRegistry
+import io.micronaut.context.ApplicationContext
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.zip.GZIPInputStream
+
+class PushGatewaySpec extends Specification {
+
+    @AutoCleanup('stop')
+    HttpServer pushGateway = HttpServer.create(new InetSocketAddress('localhost', 0), 0)
+
+    List<Map<String, Object>> requests = new CopyOnWriteArrayList<>()
+
+    def setup() {
+        pushGateway.createContext('/') { HttpExchange exchange ->
+            byte[] body = exchange.requestBody.readAllBytes()
+            if (exchange.requestHeaders.getFirst('Content-Encoding') == 'gzip') {
+                body = new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes()
+            }
+            requests << [
+                    method     : exchange.requestMethod,
+                    path       : exchange.requestURI.rawPath,
+                    contentType: exchange.requestHeaders.getFirst('Content-Type'),
+                    encoding   : exchange.requestHeaders.getFirst('Content-Encoding'),
+                    body       : new String(body)
+            ]
+            exchange.sendResponseHeaders(200, -1)
+            exchange.close()
+        }
+        pushGateway.start()
+    }
+
+    void "test the pusher is disabled by default"() {
+        given:
+        ApplicationContext context = ApplicationContext.run()
+
+        expect:
+        !context.containsBean(PushGatewayPusher)
+
+        cleanup:
+        context.close()
+    }
+
+    void "test metrics are pushed when the application stops"() {
+        given:
+        ApplicationContext context = ApplicationContext.run([
+                'micronaut.metrics.export.prometheus.pushgateway.enabled'  : true,
+                'micronaut.metrics.export.prometheus.pushgateway.url'      : "http://localhost:${pushGateway.address.port}".toString(),
+                'micronaut.metrics.export.prometheus.pushgateway.job'      : 'batch',
+                'micronaut.metrics.export.prometheus.pushgateway.push-rate': '1h',
+                'micronaut.metrics.tags.host'                              : 'host-1',
+                'micronaut.metrics.tags.team'                              : 'a/b'
+        ])
+        context.getBean(MeterRegistry).counter('batch.records').increment(42)
+
+        when:
+        context.close()
+
+        then:
+        requests.size() == 1
+        requests[0].method == 'PUT'
+        requests[0].path == '/metrics/job/batch/host/host-1/team@base64/YS9i'
+        requests[0].contentType.startsWith('text/plain; version=0.0.4')
+        requests[0].encoding == 'gzip'
+        requests[0].body.contains('batch_records_total{host="host-1",team="a/b",} 42.0')
+    }
+
+    void "test metrics are pushed periodically and deleted when the application stops"() {
+        given:
+        ApplicationContext context = ApplicationContext.run([
+                'micronaut.metrics.export.prometheus.pushgateway.enabled'           : true,
+                'micronaut.metrics.export.prometheus.pushgateway.url'               : "http://localhost:${pushGateway.address.port}/".toString(),
+                'micronaut.metrics.export.prometheus.pushgateway.push-rate'         : '100ms',
+                'micronaut.metrics.export.prometheus.pushgateway.push-on-shutdown'  : false,
+                'micronaut.metrics.export.prometheus.pushgateway.delete-on-shutdown': true,
+                'micronaut.metrics.export.prometheus.pushgateway.gzip'              : false,
+                'micronaut.metrics.export.prometheus.pushgateway.grouping-key.shard': '7',
+                'micronaut.application.name'                                        : 'nightly-report'
+        ])
+
+        expect:
+        new PollingConditions(timeout: 5).eventually {
+            assert requests.size() >= 2
+        }
+        requests[0].method == 'PUT'
+        requests[0].path == '/metrics/job/nightly-report/shard/7'
+        requests[0].encoding == null
+        requests[0].body.contains('jvm_memory_used_bytes')
+
+        when:
+        context.close()
+
+        then:
+        requests.last().method == 'DELETE'
+        requests.last().path == '/metrics/job/nightly-report/shard/7'
+    }
+
+    void "test the group URL encodes the values that are not URL safe"() {
+        expect:
+        PushGatewayClient.groupUri(URI.create('http://pushgateway:9091/'), job, groupingKey).toString() == url
+
+        where:
+        job        | groupingKey                          | url
+        'batch'    | [:]                                  | 'http://pushgateway:9091/metrics/job/batch'
+        'my job'   | [instance: '']                       | 'http://pushgateway:9091/metrics/job@base64/bXkgam9i/instance@base64/='
+        'batch'    | [instance: '10.0.0.1', path: '/var'] | 'http://pushgateway:9091/metrics/job/batch/instance/10.0.0.1/path@base64/L3Zhcg=='
+    }
+}